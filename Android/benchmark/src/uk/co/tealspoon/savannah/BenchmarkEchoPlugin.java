@@ -0,0 +1,44 @@
+package uk.co.tealspoon.savannah;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A Plugin which echoes its first argument back to the WebView, like the EchoPlugin in the examples, so that the benchmarks measure the
+ * bridge rather than the Plugin.
+ */
+class BenchmarkEchoPlugin implements Plugin {
+
+	/**
+	 * A BenchmarkEchoPlugin whose Commands are pooled.
+	 */
+	static final class Pooled extends BenchmarkEchoPlugin implements PooledCommandPlugin {
+	}
+
+	private static final List<String> methods = Arrays.asList("echo");
+
+	@Override
+	public String getName() {
+		return Payloads.PLUGIN_NAME;
+	}
+
+	@Override
+	public Collection<String> getMethods() {
+		return methods;
+	}
+
+	@Override
+	public boolean execute(String action, Command command) {
+		if (action.equals("echo")) {
+			if (command.hasStringAtIndex(0)) {
+				command.success(command.stringAtIndex(0));
+			}
+			else {
+				command.error();
+			}
+			return true;
+		}
+		return false;
+	}
+}
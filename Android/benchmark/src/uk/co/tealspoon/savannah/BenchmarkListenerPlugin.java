@@ -0,0 +1,44 @@
+package uk.co.tealspoon.savannah;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A Plugin which keeps the Command for its listen method, so that a benchmark can send progress results with it, like a sensor Plugin.
+ */
+final class BenchmarkListenerPlugin implements Plugin {
+
+	static final String NAME = "uk.co.tealspoon.savannah.benchmark.listener";
+
+	private static final List<String> methods = Arrays.asList("listen");
+
+	private volatile Command listener;
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public Collection<String> getMethods() {
+		return methods;
+	}
+
+	@Override
+	public boolean execute(String action, Command command) {
+		if (action.equals("listen")) {
+			listener = command;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the Command for the most recent call to listen.
+	 * @return the Command, or null if listen has not been called.
+	 */
+	Command getListener() {
+		return listener;
+	}
+}
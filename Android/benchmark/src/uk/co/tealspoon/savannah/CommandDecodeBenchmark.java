@@ -0,0 +1,72 @@
+package uk.co.tealspoon.savannah;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import android.app.Activity;
+
+/**
+ * Measures how quickly a batch of commands from savannah.js is decoded, with and without parsing each command's arguments.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandDecodeBenchmark {
+
+	@Param({"1", "16", "128"})
+	public int commandCount;
+
+	@Param({"16", "1024", "65536"})
+	public int payloadLength;
+
+	private String batch;
+	private WebViewManager manager;
+
+	@Setup
+	public void setUp() {
+		batch = Payloads.commandBatch(commandCount, payloadLength);
+		manager = new FakeWebView(new Activity()).createManager();
+	}
+
+	/**
+	 * Decodes the batch, delimiting each command's arguments without parsing them.
+	 */
+	@Benchmark
+	public void decode(Blackhole blackhole) throws JSONException {
+		CommandBatchDecoder commands = new CommandBatchDecoder(batch);
+		while (commands.next()) {
+			blackhole.consume(commands.getCallbackId());
+			blackhole.consume(commands.getPluginName());
+			blackhole.consume(commands.getMethodName());
+			blackhole.consume(commands.getArguments());
+		}
+	}
+
+	/**
+	 * Decodes the batch and reads each command's argument, as a Plugin would.
+	 */
+	@Benchmark
+	public void decodeAndReadArguments(Blackhole blackhole) throws JSONException {
+		CommandBatchDecoder commands = new CommandBatchDecoder(batch);
+		while (commands.next()) {
+			Command command = new Command(commands.getArguments(), null, commands.getCallbackId(), 0, manager, null);
+			blackhole.consume(command.stringAtIndex(0));
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package uk.co.tealspoon.savannah;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONObject;
+
+import android.app.Activity;
+import android.webkit.ValueCallback;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+/**
+ * A WebView which stands in for the page on the JVM. It finishes loading when asked, calls the JavaScript interface the way the page
+ * would, and counts the scripts that the manager evaluates instead of running them.
+ */
+final class FakeWebView extends WebView {
+
+	private static final String URL = "file:///android_asset/www/index.html";
+
+	private final Activity activity;
+	private WebViewClient client;
+	private String url;
+	private Object javascriptInterface;
+	private Method exec;
+	private final AtomicInteger scriptCount = new AtomicInteger();
+	private volatile int lastScriptLength;
+
+	/**
+	 * Creates a new FakeWebView.
+	 * @param activity the Activity that contains this WebView.
+	 */
+	FakeWebView(Activity activity) {
+		super(activity);
+		this.activity = activity;
+	}
+
+	/**
+	 * Creates a WebViewManager for this WebView which provides the given Plugins, and finishes loading the page.
+	 * @param plugins the Plugins to provide.
+	 * @return the WebViewManager.
+	 */
+	WebViewManager createManager(Plugin... plugins) {
+		WebViewManager manager;
+		try {
+			manager = new WebViewManager("benchmark", this, activity, new JSONObject(), Arrays.asList(plugins), new URL(URL));
+		}
+		catch (MalformedURLException e) {
+			throw new IllegalStateException(e);
+		}
+		finishLoading();
+		return manager;
+	}
+
+	@Override
+	public void addJavascriptInterface(Object object, String name) {
+		if (name.equals("savannahJSI")) {
+			javascriptInterface = object;
+		}
+	}
+
+	@Override
+	public void setWebViewClient(WebViewClient client) {
+		this.client = client;
+	}
+
+	@Override
+	public void loadUrl(String url) {
+		this.url = url;
+	}
+
+	@Override
+	public void evaluateJavascript(String script, ValueCallback<String> resultCallback) {
+		lastScriptLength = script.length();
+		scriptCount.incrementAndGet();
+	}
+
+	/**
+	 * Tells the WebViewClient that the page has finished loading, which binds the manager to it.
+	 */
+	private void finishLoading() {
+		client.onPageFinished(this, url);
+	}
+
+	/**
+	 * Sends a batch of commands to the manager through its JavaScript interface. The WebView calls the interface by reflection too.
+	 * @param commands a JSON array of commands.
+	 * @return the value returned to savannah.js.
+	 */
+	Object exec(String commands) {
+		try {
+			if (exec == null) {
+				exec = javascriptInterface.getClass().getMethod("exec", String.class);
+				exec.setAccessible(true);
+			}
+			return exec.invoke(javascriptInterface, commands);
+		}
+		catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+		catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+		catch (InvocationTargetException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Returns the number of scripts evaluated so far.
+	 * @return the number of scripts.
+	 */
+	int getScriptCount() {
+		return scriptCount.get();
+	}
+
+	/**
+	 * Waits until at least the given number of scripts have been evaluated.
+	 * @param count the number of scripts to wait for.
+	 */
+	void awaitScriptCount(int count) {
+		while (scriptCount.get() < count) {
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * Returns the length of the last script evaluated.
+	 * @return the length of the script.
+	 */
+	int getLastScriptLength() {
+		return lastScriptLength;
+	}
+}
@@ -0,0 +1,84 @@
+package uk.co.tealspoon.savannah;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Builds the payloads used by the benchmarks.
+ */
+final class Payloads {
+
+	/**
+	 * The name of the Plugin that the benchmarks send commands to.
+	 */
+	static final String PLUGIN_NAME = "uk.co.tealspoon.savannah.benchmark.echo";
+
+	private static final String TEXT = "The quick brown fox jumps over the lazy dog. \"Quoted\", tab\t and back\\slash. ";
+
+	private Payloads() {
+	}
+
+	/**
+	 * Returns a string of the given length which contains a mix of plain and escaped characters.
+	 * @param length the length of the string.
+	 * @return the string.
+	 */
+	static String text(int length) {
+		StringBuilder builder = new StringBuilder(length);
+		while (builder.length() < length) {
+			builder.append(TEXT, 0, Math.min(TEXT.length(), length - builder.length()));
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Returns a byte array of the given length which contains every byte value.
+	 * @param length the length of the array.
+	 * @return the array.
+	 */
+	static byte[] bytes(int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = (byte) i;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns an object with string properties whose values add up to roughly the given length.
+	 * @param length the approximate total length of the object's values.
+	 * @return the object.
+	 */
+	static JSONObject object(int length) {
+		JSONObject object = new JSONObject();
+		int propertyLength = Math.max(1, Math.min(length, 64));
+		try {
+			for (int i = 0; i * propertyLength < length; i++) {
+				object.put("property" + i, text(propertyLength));
+			}
+		}
+		catch (JSONException e) {
+			// impossible
+		}
+		return object;
+	}
+
+	/**
+	 * Returns a batch of commands as sent by savannah.js, each of which calls the echo method with a string of the given length.
+	 * @param commandCount the number of commands in the batch.
+	 * @param payloadLength the length of each command's string argument.
+	 * @return the batch as a JSON string.
+	 */
+	static String commandBatch(int commandCount, int payloadLength) {
+		String arguments = "[" + JSONObject.quote(text(payloadLength)) + "]";
+		StringBuilder batch = new StringBuilder();
+		batch.append('[');
+		for (int i = 0; i < commandCount; i++) {
+			if (i > 0) {
+				batch.append(',');
+			}
+			batch.append('[').append(i + 1).append(",\"").append(PLUGIN_NAME).append("\",\"echo\",").append(arguments).append(']');
+		}
+		return batch.append(']').toString();
+	}
+}
@@ -0,0 +1,76 @@
+package uk.co.tealspoon.savannah;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.app.Activity;
+import android.os.Looper;
+
+/**
+ * Measures a Plugin sending a stream of progress results, as a sensor Plugin would. Each operation sends a burst of results and then
+ * runs the UI thread's queue, which flushes the results if they are batched. Run with -prof gc to see the allocation per burst.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgressResultBenchmark {
+
+	private static final int BURST_SIZE = 16;
+
+	@Param({"double", "string"})
+	public String resultType;
+
+	@Param({"false", "true"})
+	public boolean batched;
+
+	private FakeWebView webView;
+	private Command listener;
+	private String text;
+
+	@Setup
+	public void setUp() {
+		BenchmarkListenerPlugin plugin = new BenchmarkListenerPlugin();
+		webView = new FakeWebView(new Activity());
+		WebViewManager manager = webView.createManager(plugin);
+		manager.setDefaultExecutor(new Executor() {
+			public void execute(Runnable command) {
+				command.run();
+			}
+		});
+		manager.setResultBatchingWindow(batched ? WebViewManager.RESULT_BATCHING_PER_FRAME : WebViewManager.RESULT_BATCHING_DISABLED);
+		webView.exec("[[1,\"" + BenchmarkListenerPlugin.NAME + "\",\"listen\",[]]]");
+		listener = plugin.getListener();
+		text = Payloads.text(16);
+	}
+
+	@Benchmark
+	public int progress() {
+		if (resultType.equals("double")) {
+			for (int i = 0; i < BURST_SIZE; i++) {
+				listener.progress(i * 0.5);
+			}
+		}
+		else {
+			for (int i = 0; i < BURST_SIZE; i++) {
+				listener.progress(text);
+			}
+		}
+		Looper.getMainLooper().runPending();
+		return webView.getScriptCount();
+	}
+}
@@ -0,0 +1,70 @@
+package uk.co.tealspoon.savannah;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how quickly a result is written as the script that delivers it to savannah.js.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultSerializationBenchmark {
+
+	@Param({"string", "object", "bytes"})
+	public String resultType;
+
+	@Param({"16", "1024", "65536"})
+	public int payloadLength;
+
+	private Object result;
+
+	@Setup
+	public void setUp() {
+		if (resultType.equals("string")) {
+			result = Payloads.text(payloadLength);
+		}
+		else if (resultType.equals("object")) {
+			result = Payloads.object(payloadLength);
+		}
+		else {
+			result = Payloads.bytes(payloadLength);
+		}
+	}
+
+	/**
+	 * Writes the result into the calling thread's reused builder.
+	 */
+	@Benchmark
+	public int write() {
+		ResultWriter writer = ResultWriter.obtain();
+		writer.getBuilder().append("window.savannah._callback(");
+		writer.writeResult(1, true, result, false, false);
+		return writer.getBuilder().append(");").length();
+	}
+
+	/**
+	 * Writes the result and copies it into the String that is handed to the WebView.
+	 */
+	@Benchmark
+	public String writeScript() {
+		ResultWriter writer = ResultWriter.obtain();
+		writer.getBuilder().append("window.savannah._callback(");
+		writer.writeResult(1, true, result, false, false);
+		return writer.getBuilder().append(");").toString();
+	}
+}
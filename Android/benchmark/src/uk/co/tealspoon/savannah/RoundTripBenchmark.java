@@ -0,0 +1,79 @@
+package uk.co.tealspoon.savannah;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.app.Activity;
+
+/**
+ * Measures a batch of echo commands making the whole trip through a WebViewManager: from the JavaScript interface, through the Plugin,
+ * to the scripts which deliver the results to the page.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoundTripBenchmark {
+
+	@Param({"1", "16"})
+	public int commandCount;
+
+	@Param({"16", "1024", "65536"})
+	public int payloadLength;
+
+	/**
+	 * "inline" runs Plugins on the calling thread, which isolates the cost of the bridge; "shared" uses the default thread pool.
+	 */
+	@Param({"inline", "shared"})
+	public String executor;
+
+	@Param({"false", "true"})
+	public boolean metricsEnabled;
+
+	@Param({"false", "true"})
+	public boolean pooled;
+
+	private FakeWebView webView;
+	private String batch;
+
+	@Setup
+	public void setUp() {
+		webView = new FakeWebView(new Activity());
+		WebViewManager manager = webView.createManager(pooled ? new BenchmarkEchoPlugin.Pooled() : new BenchmarkEchoPlugin());
+		manager.setMetricsEnabled(metricsEnabled);
+		if (executor.equals("inline")) {
+			manager.setDefaultExecutor(new Executor() {
+				public void execute(Runnable command) {
+					command.run();
+				}
+			});
+		}
+		batch = Payloads.commandBatch(commandCount, payloadLength);
+	}
+
+	/**
+	 * Sends the batch and waits for every result to be delivered. The callback IDs are reused, which is safe because each command has
+	 * completed before the next batch is sent.
+	 */
+	@Benchmark
+	public int echo() {
+		int expectedCount = webView.getScriptCount() + commandCount;
+		webView.exec(batch);
+		webView.awaitScriptCount(expectedCount);
+		return webView.getLastScriptLength();
+	}
+}
@@ -0,0 +1,14 @@
+package android.app;
+
+import android.content.Context;
+
+/**
+ * JVM stand-in for the Android class of the same name, used only to run the benchmarks off-device.
+ * The calling thread stands in for the UI thread, so runnables are run immediately.
+ */
+public class Activity extends Context {
+
+	public void runOnUiThread(Runnable action) {
+		action.run();
+	}
+}
@@ -0,0 +1,26 @@
+package android.content.res;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * JVM stand-in for the Android class of the same name, used only to run the benchmarks off-device.
+ */
+public class AssetFileDescriptor implements Closeable {
+
+	public long getStartOffset() {
+		return 0;
+	}
+
+	public long getLength() {
+		return 0;
+	}
+
+	public FileInputStream createInputStream() throws IOException {
+		throw new IOException();
+	}
+
+	public void close() throws IOException {
+	}
+}
@@ -0,0 +1,20 @@
+package android.content.res;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * JVM stand-in for the Android class of the same name, used only to run the benchmarks off-device.
+ * Has no assets.
+ */
+public class AssetManager {
+
+	public InputStream open(String fileName) throws IOException {
+		throw new FileNotFoundException(fileName);
+	}
+
+	public AssetFileDescriptor openFd(String fileName) throws IOException {
+		throw new FileNotFoundException(fileName);
+	}
+}
@@ -0,0 +1,7 @@
+package android.graphics;
+
+/**
+ * JVM stand-in for the Android class of the same name, used only to run the benchmarks off-device.
+ */
+public final class Bitmap {
+}
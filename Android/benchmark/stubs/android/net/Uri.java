@@ -0,0 +1,22 @@
+package android.net;
+
+/**
+ * JVM stand-in for the Android class of the same name, used only to run the benchmarks off-device.
+ */
+public class Uri {
+
+	private final String uriString;
+
+	private Uri(String uriString) {
+		this.uriString = uriString;
+	}
+
+	public static Uri parse(String uriString) {
+		return new Uri(uriString);
+	}
+
+	@Override
+	public String toString() {
+		return uriString;
+	}
+}
@@ -0,0 +1,21 @@
+package android.os;
+
+/**
+ * JVM stand-in for the Android class of the same name, used only to run the benchmarks off-device.
+ * Reports KitKat, so that results are sent by evaluating JavaScript rather than over a message port.
+ */
+public class Build {
+
+	public static class VERSION {
+		public static final int SDK_INT = VERSION_CODES.KITKAT;
+	}
+
+	public static class VERSION_CODES {
+		public static final int JELLY_BEAN = 16;
+		public static final int JELLY_BEAN_MR2 = 18;
+		public static final int KITKAT = 19;
+		public static final int LOLLIPOP = 21;
+		public static final int M = 23;
+		public static final int Q = 29;
+	}
+}
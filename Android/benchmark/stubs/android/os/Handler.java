@@ -0,0 +1,44 @@
+package android.os;
+
+/**
+ * JVM stand-in for the Android class of the same name, used only to run the benchmarks off-device.
+ * Runnables are queued on the looper until a benchmark calls {@link Looper#runPending()}; delays are ignored.
+ */
+public class Handler {
+
+	private final Looper looper;
+
+	public Handler() {
+		this(Looper.myLooper());
+	}
+
+	public Handler(Looper looper) {
+		this.looper = looper;
+	}
+
+	public boolean post(Runnable r) {
+		synchronized (looper.queue) {
+			looper.queue.add(r);
+		}
+		return true;
+	}
+
+	public boolean postAtFrontOfQueue(Runnable r) {
+		synchronized (looper.queue) {
+			looper.queue.addFirst(r);
+		}
+		return true;
+	}
+
+	public boolean postDelayed(Runnable r, long delayMillis) {
+		return post(r);
+	}
+
+	public void removeCallbacks(Runnable r) {
+		synchronized (looper.queue) {
+			while (looper.queue.remove(r)) {
+				// remove every instance
+			}
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package android.os;
+
+import java.util.ArrayDeque;
+
+/**
+ * JVM stand-in for the Android class of the same name, used only to run the benchmarks off-device.
+ * There is no looping thread: runnables posted to the main looper wait until a benchmark calls {@link #runPending()}.
+ */
+public class Looper {
+
+	private static final Looper mainLooper = new Looper();
+
+	final ArrayDeque<Runnable> queue = new ArrayDeque<Runnable>();
+
+	public static Looper getMainLooper() {
+		return mainLooper;
+	}
+
+	public static Looper myLooper() {
+		return mainLooper;
+	}
+
+	/**
+	 * Not part of the Android API. Runs the runnables which have been posted so far on the calling thread, ignoring their delays.
+	 */
+	public void runPending() {
+		int count;
+		synchronized (queue) {
+			count = queue.size();
+		}
+		for (int i = 0; i < count; i++) {
+			Runnable r;
+			synchronized (queue) {
+				r = queue.poll();
+			}
+			if (r == null) {
+				break;
+			}
+			r.run();
+		}
+	}
+}
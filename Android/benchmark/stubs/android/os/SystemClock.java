@@ -0,0 +1,11 @@
+package android.os;
+
+/**
+ * JVM stand-in for the Android class of the same name, used only to run the benchmarks off-device.
+ */
+public final class SystemClock {
+
+	public static long uptimeMillis() {
+		return System.nanoTime() / 1000000;
+	}
+}
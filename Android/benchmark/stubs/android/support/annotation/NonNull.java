@@ -0,0 +1,11 @@
+package android.support.annotation;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * JVM stand-in for the Android class of the same name, used only to run the benchmarks off-device.
+ */
+@Retention(RetentionPolicy.CLASS)
+public @interface NonNull {
+}
@@ -0,0 +1,47 @@
+package android.util;
+
+import java.util.HashMap;
+
+/**
+ * JVM stand-in for the Android class of the same name, used only to run the benchmarks off-device.
+ * Backed by a HashMap, so its costs differ from the real class, which uses binary search over sorted keys.
+ */
+public class SparseArray<E> {
+
+	private final HashMap<Integer, E> values = new HashMap<Integer, E>();
+
+	public SparseArray() {
+	}
+
+	public SparseArray(int initialCapacity) {
+	}
+
+	public E get(int key) {
+		return values.get(key);
+	}
+
+	public E get(int key, E valueIfKeyNotFound) {
+		E value = values.get(key);
+		return value == null ? valueIfKeyNotFound : value;
+	}
+
+	public void put(int key, E value) {
+		values.put(key, value);
+	}
+
+	public void remove(int key) {
+		values.remove(key);
+	}
+
+	public void delete(int key) {
+		values.remove(key);
+	}
+
+	public int size() {
+		return values.size();
+	}
+
+	public void clear() {
+		values.clear();
+	}
+}
@@ -0,0 +1,21 @@
+package android.view;
+
+/**
+ * JVM stand-in for the Android class of the same name, used only to run the benchmarks off-device.
+ */
+public class Choreographer {
+
+	public interface FrameCallback {
+		void doFrame(long frameTimeNanos);
+	}
+
+	private static final Choreographer instance = new Choreographer();
+
+	public static Choreographer getInstance() {
+		return instance;
+	}
+
+	public void postFrameCallback(FrameCallback callback) {
+		callback.doFrame(System.nanoTime());
+	}
+}
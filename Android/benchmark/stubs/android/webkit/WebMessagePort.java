@@ -0,0 +1,22 @@
+package android.webkit;
+
+import android.os.Handler;
+
+/**
+ * JVM stand-in for the Android class of the same name, used only to run the benchmarks off-device.
+ */
+public abstract class WebMessagePort {
+
+	public static abstract class WebMessageCallback {
+		public void onMessage(WebMessagePort port, WebMessage message) {
+		}
+	}
+
+	public abstract void postMessage(WebMessage message);
+
+	public abstract void close();
+
+	public abstract void setWebMessageCallback(WebMessageCallback callback);
+
+	public abstract void setWebMessageCallback(WebMessageCallback callback, Handler handler);
+}
@@ -0,0 +1,17 @@
+package android.webkit;
+
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * JVM stand-in for the Android class of the same name, used only to run the benchmarks off-device.
+ */
+public class WebResourceResponse {
+
+	public WebResourceResponse(String mimeType, String encoding, InputStream data) {
+	}
+
+	public WebResourceResponse(String mimeType, String encoding, int statusCode, String reasonPhrase,
+							   Map<String, String> responseHeaders, InputStream data) {
+	}
+}
@@ -0,0 +1,10 @@
+package android.webkit;
+
+/**
+ * JVM stand-in for the Android class of the same name, used only to run the benchmarks off-device.
+ */
+public class WebSettings {
+
+	public void setJavaScriptEnabled(boolean flag) {
+	}
+}
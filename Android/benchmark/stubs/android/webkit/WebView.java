@@ -0,0 +1,51 @@
+package android.webkit;
+
+import android.content.Context;
+import android.net.Uri;
+
+/**
+ * JVM stand-in for the Android class of the same name, used only to run the benchmarks off-device.
+ * Does nothing; the benchmarks subclass it to capture what Savannah sends to the page.
+ */
+public class WebView {
+
+	public WebView(Context context) {
+	}
+
+	public String getOriginalUrl() {
+		return null;
+	}
+
+	public WebSettings getSettings() {
+		return new WebSettings();
+	}
+
+	public void addJavascriptInterface(Object object, String name) {
+	}
+
+	public void removeJavascriptInterface(String name) {
+	}
+
+	public void setWebViewClient(WebViewClient client) {
+	}
+
+	public void loadUrl(String url) {
+	}
+
+	public void evaluateJavascript(String script, ValueCallback<String> resultCallback) {
+	}
+
+	public void clearHistory() {
+	}
+
+	public void destroy() {
+	}
+
+	public WebMessagePort[] createWebMessageChannel() {
+		throw new UnsupportedOperationException();
+	}
+
+	public void postWebMessage(WebMessage message, Uri targetOrigin) {
+		throw new UnsupportedOperationException();
+	}
+}
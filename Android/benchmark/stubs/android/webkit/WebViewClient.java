@@ -0,0 +1,57 @@
+package android.webkit;
+
+import android.graphics.Bitmap;
+import android.net.http.SslError;
+import android.os.Message;
+import android.view.KeyEvent;
+
+/**
+ * JVM stand-in for the Android class of the same name, used only to run the benchmarks off-device.
+ */
+public class WebViewClient {
+
+	public void doUpdateVisitedHistory(WebView view, String url, boolean isReload) {
+	}
+
+	public void onFormResubmission(WebView view, Message dontResend, Message resend) {
+	}
+
+	public void onLoadResource(WebView view, String url) {
+	}
+
+	public void onPageFinished(WebView view, String url) {
+	}
+
+	public void onPageStarted(WebView view, String url, Bitmap favicon) {
+	}
+
+	public void onReceivedError(WebView view, int errorCode, String description, String failingUrl) {
+	}
+
+	public void onReceivedHttpAuthRequest(WebView view, HttpAuthHandler handler, String host, String realm) {
+	}
+
+	public void onReceivedLoginRequest(WebView view, String realm, String account, String args) {
+	}
+
+	public void onReceivedSslError(WebView view, SslErrorHandler handler, SslError error) {
+	}
+
+	public void onScaleChanged(WebView view, float oldScale, float newScale) {
+	}
+
+	public void onUnhandledKeyEvent(WebView view, KeyEvent event) {
+	}
+
+	public WebResourceResponse shouldInterceptRequest(WebView view, String url) {
+		return null;
+	}
+
+	public boolean shouldOverrideKeyEvent(WebView view, KeyEvent event) {
+		return false;
+	}
+
+	public boolean shouldOverrideUrlLoading(WebView view, String url) {
+		return false;
+	}
+}
@@ -0,0 +1,485 @@
+package uk.co.tealspoon.savannah;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.util.Log;
+import android.webkit.WebResourceResponse;
+
+/**
+ * Serves a directory of the app's assets to a {@link android.webkit.WebView WebView} from memory, for pages which would otherwise read
+ * their assets from the APK on every load. Give an AssetServer to a manager with
+ * {@link uk.co.tealspoon.savannah.WebViewManager#setAssetServer(AssetServer)}, and requests for URLs under the server's base URL are
+ * served from the server's asset directory.
+ * <p>
+ * Assets up to a maximum size are kept in a least recently used cache. Larger assets which are stored uncompressed in the APK are
+ * memory mapped rather than copied, and other large assets are streamed. If an asset has a precompressed variant, with the same path
+ * and a ".gz" suffix, the variant is read and cached instead, so that the cache holds more assets. WebView doesn't decode the
+ * Content-Encoding of intercepted responses, so precompressed variants are inflated as they are served.
+ * <p>
+ * Responses have a MIME type and, on Android Lollipop (21) and later, a Cache-Control header. An AssetServer may be shared between
+ * managers, and is safe to use from any thread.
+ */
+public class AssetServer {
+
+	/**
+	 * The default maximum total size in bytes of the cached assets.
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 4 * 1024 * 1024;
+
+	/**
+	 * The default maximum size in bytes of an asset which is cached.
+	 */
+	public static final int DEFAULT_MAX_CACHED_ASSET_SIZE = 256 * 1024;
+
+	/**
+	 * The default Cache-Control header of responses.
+	 */
+	public static final String DEFAULT_CACHE_CONTROL = "no-cache";
+
+	private static final String GZIP_SUFFIX = ".gz";
+	private static final String INDEX_FILE = "index.html";
+	private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+	// resolved asset path of an asset which does not exist
+	private static final String MISSING = "";
+
+	private static final Map<String, String> mimeTypes = new HashMap<String, String>();
+
+	static {
+		mimeTypes.put("html", "text/html");
+		mimeTypes.put("htm", "text/html");
+		mimeTypes.put("js", "application/javascript");
+		mimeTypes.put("mjs", "application/javascript");
+		mimeTypes.put("css", "text/css");
+		mimeTypes.put("json", "application/json");
+		mimeTypes.put("map", "application/json");
+		mimeTypes.put("xml", "text/xml");
+		mimeTypes.put("txt", "text/plain");
+		mimeTypes.put("svg", "image/svg+xml");
+		mimeTypes.put("png", "image/png");
+		mimeTypes.put("jpg", "image/jpeg");
+		mimeTypes.put("jpeg", "image/jpeg");
+		mimeTypes.put("gif", "image/gif");
+		mimeTypes.put("webp", "image/webp");
+		mimeTypes.put("ico", "image/x-icon");
+		mimeTypes.put("woff", "font/woff");
+		mimeTypes.put("woff2", "font/woff2");
+		mimeTypes.put("ttf", "font/ttf");
+		mimeTypes.put("otf", "font/otf");
+		mimeTypes.put("wasm", "application/wasm");
+		mimeTypes.put("mp3", "audio/mpeg");
+		mimeTypes.put("mp4", "video/mp4");
+		mimeTypes.put("webm", "video/webm");
+	}
+
+	/**
+	 * A cached asset.
+	 */
+	private static final class Asset {
+		final byte[] bytes;
+		final boolean isGzipped;
+
+		Asset(byte[] bytes, boolean isGzipped) {
+			this.bytes = bytes;
+			this.isGzipped = isGzipped;
+		}
+
+		InputStream open() throws IOException {
+			InputStream stream = new ByteArrayInputStream(bytes);
+			return isGzipped ? new GZIPInputStream(stream) : stream;
+		}
+	}
+
+	/**
+	 * An InputStream which reads a memory mapped asset.
+	 */
+	private static final class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? (buffer.get() & 0xff) : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			length = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, length);
+			return length;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+
+	private final AssetManager assets;
+	private final URI baseUri;
+	private final String assetDirectory;
+	private final int cacheSize;
+	private final int maxCachedAssetSize;
+	private volatile String cacheControl = DEFAULT_CACHE_CONTROL;
+
+	// guarded by this
+	private final LinkedHashMap<String, Asset> cache = new LinkedHashMap<String, Asset>(16, 0.75f, true);
+	private final HashMap<String, String> resolvedPaths = new HashMap<String, String>();
+	private int cachedBytes;
+
+	/**
+	 * Creates a new AssetServer with the default cache sizes.
+	 * @param assets the app's assets.
+	 * @param baseUrl the URL to serve the asset directory at, such as {@code file:///android_asset/www/}.
+	 * @param assetDirectory the path of the directory in the assets to serve, such as {@code www}.
+	 */
+	public AssetServer(@NonNull AssetManager assets, @NonNull URL baseUrl, @NonNull String assetDirectory) {
+		this(assets, baseUrl, assetDirectory, DEFAULT_CACHE_SIZE, DEFAULT_MAX_CACHED_ASSET_SIZE);
+	}
+
+	/**
+	 * Creates a new AssetServer.
+	 * @param assets the app's assets.
+	 * @param baseUrl the URL to serve the asset directory at, such as {@code file:///android_asset/www/}.
+	 * @param assetDirectory the path of the directory in the assets to serve, such as {@code www}.
+	 * @param cacheSize the maximum total size in bytes of the cached assets.
+	 * @param maxCachedAssetSize the maximum size in bytes of an asset which is cached. Larger assets are memory mapped or streamed.
+	 */
+	public AssetServer(@NonNull AssetManager assets, @NonNull URL baseUrl, @NonNull String assetDirectory, int cacheSize,
+					   int maxCachedAssetSize) {
+		if (assets == null) {
+			throw new IllegalArgumentException("Assets should not be null");
+		}
+		if (baseUrl == null) {
+			throw new IllegalArgumentException("Base URL should not be null");
+		}
+		if (assetDirectory == null) {
+			throw new IllegalArgumentException("Asset directory should not be null");
+		}
+		if (cacheSize < 0 || maxCachedAssetSize < 0) {
+			throw new IllegalArgumentException("Cache sizes should not be negative");
+		}
+
+		try {
+			this.baseUri = baseUrl.toURI();
+		}
+		catch (URISyntaxException e) {
+			throw new IllegalArgumentException("Base URL should be a valid URI", e);
+		}
+		this.assets = assets;
+		this.assetDirectory = (assetDirectory.length() == 0 || assetDirectory.endsWith("/")) ? assetDirectory : assetDirectory + "/";
+		this.cacheSize = cacheSize;
+		this.maxCachedAssetSize = Math.min(maxCachedAssetSize, cacheSize);
+	}
+
+	/**
+	 * Sets the Cache-Control header of responses. Only used on Android Lollipop (21) and later.
+	 * @param cacheControl the header, or null for none. Defaults to {@link #DEFAULT_CACHE_CONTROL}.
+	 */
+	public void setCacheControl(String cacheControl) {
+		this.cacheControl = cacheControl;
+	}
+
+	/**
+	 * Returns a response for the asset at the given URL. Called by the WebViewManager from
+	 * {@link android.webkit.WebViewClient#shouldInterceptRequest(android.webkit.WebView, String)}.
+	 * @param url the URL of the request.
+	 * @return the response, or null if the URL is not under the base URL or there is no such asset.
+	 */
+	public WebResourceResponse serve(String url) {
+		String path = assetPathForUrl(url);
+		if (path == null) {
+			return null;
+		}
+
+		try {
+			Asset asset;
+			synchronized (this) {
+				asset = cache.get(path);
+			}
+
+			InputStream stream = (asset != null) ? asset.open() : load(path);
+			return (stream == null) ? null : createResponse(mimeTypeOf(path), stream);
+		}
+		catch (IOException e) {
+			Log.w("Savannah", "Unable to serve the asset " + path, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Discards all cached assets. Call this if the assets change, for example after downloading an update.
+	 */
+	public synchronized void clearCache() {
+		cache.clear();
+		resolvedPaths.clear();
+		cachedBytes = 0;
+	}
+
+	/**
+	 * Returns the path of the asset for the given URL.
+	 * @param url the URL of a request.
+	 * @return the asset path, or null if the URL is not under the base URL.
+	 */
+	private String assetPathForUrl(String url) {
+		URI uri;
+		try {
+			uri = new URI(url);
+		}
+		catch (URISyntaxException e) {
+			return null;
+		}
+
+		String path = uri.getPath();
+		String basePath = baseUri.getPath();
+		if (path == null || basePath == null || !path.startsWith(basePath) ||
+				!equal(uri.getScheme(), baseUri.getScheme()) || !equal(uri.getHost(), baseUri.getHost()) ||
+				uri.getPort() != baseUri.getPort()) {
+			return null;
+		}
+
+		String relativePath = path.substring(basePath.length());
+		if (relativePath.startsWith("/")) {
+			relativePath = relativePath.substring(1);
+		}
+		if (relativePath.length() == 0 || relativePath.endsWith("/")) {
+			relativePath += INDEX_FILE;
+		}
+		// don't serve assets from outside the directory
+		if (relativePath.equals("..") || relativePath.startsWith("../") || relativePath.contains("/../") ||
+				relativePath.endsWith("/..")) {
+			return null;
+		}
+
+		return assetDirectory + relativePath;
+	}
+
+	/**
+	 * Opens an asset which is not cached, and caches it if it is small enough.
+	 * @param path the path of the asset.
+	 * @return a stream of the asset's contents, or null if there is no such asset.
+	 * @throws IOException if the asset could not be read.
+	 */
+	private InputStream load(String path) throws IOException {
+		String sourcePath = resolve(path);
+		if (sourcePath == MISSING) {
+			return null;
+		}
+		boolean isGzipped = !sourcePath.equals(path);
+
+		byte[] bytes = null;
+		InputStream stream = null;
+
+		AssetFileDescriptor descriptor = null;
+		try {
+			descriptor = assets.openFd(sourcePath);
+		}
+		catch (IOException e) {
+			// the asset is compressed in the APK, so it can only be streamed
+		}
+
+		if (descriptor != null) {
+			try {
+				long length = descriptor.getLength();
+				FileInputStream input = descriptor.createInputStream();
+				try {
+					if (length > maxCachedAssetSize) {
+						// the mapping stays valid once the file is closed
+						stream = new ByteBufferInputStream(input.getChannel().map(FileChannel.MapMode.READ_ONLY,
+								descriptor.getStartOffset(), length));
+					}
+					else {
+						bytes = readFully(input, (int) length);
+					}
+				}
+				finally {
+					input.close();
+				}
+			}
+			finally {
+				descriptor.close();
+			}
+		}
+		else {
+			InputStream input = assets.open(sourcePath);
+			int length = input.available();
+			if (length > maxCachedAssetSize) {
+				stream = input;
+			}
+			else {
+				try {
+					bytes = readFully(input, length);
+				}
+				finally {
+					input.close();
+				}
+			}
+		}
+
+		if (bytes != null) {
+			Asset asset = new Asset(bytes, isGzipped);
+			cache(path, asset);
+			return asset.open();
+		}
+		return isGzipped ? new GZIPInputStream(stream) : stream;
+	}
+
+	/**
+	 * Returns the path of the asset to read for the given path: its precompressed variant if there is one, otherwise the path itself.
+	 * @param path the path of the asset.
+	 * @return the path to read, or {@link #MISSING} if there is no such asset.
+	 */
+	private String resolve(String path) {
+		synchronized (this) {
+			String sourcePath = resolvedPaths.get(path);
+			if (sourcePath != null) {
+				return sourcePath;
+			}
+		}
+
+		String sourcePath = exists(path + GZIP_SUFFIX) ? path + GZIP_SUFFIX : (exists(path) ? path : MISSING);
+		synchronized (this) {
+			resolvedPaths.put(path, sourcePath);
+		}
+		return sourcePath;
+	}
+
+	/**
+	 * Returns true if there is an asset with the given path.
+	 * @param path the path of an asset.
+	 * @return true if the asset exists.
+	 */
+	private boolean exists(String path) {
+		try {
+			assets.open(path).close();
+			return true;
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Adds an asset to the cache, evicting the least recently used assets to make room for it.
+	 * @param path the path of the asset.
+	 * @param asset the asset.
+	 */
+	private synchronized void cache(String path, Asset asset) {
+		Asset previous = cache.put(path, asset);
+		if (previous != null) {
+			cachedBytes -= previous.bytes.length;
+		}
+		cachedBytes += asset.bytes.length;
+
+		Iterator<Asset> iterator = cache.values().iterator();
+		while (cachedBytes > cacheSize && iterator.hasNext()) {
+			cachedBytes -= iterator.next().bytes.length;
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Creates a response with the given MIME type and contents.
+	 * @param mimeType the MIME type of the asset.
+	 * @param stream the contents of the asset.
+	 * @return the response.
+	 */
+	private WebResourceResponse createResponse(String mimeType, InputStream stream) {
+		String encoding = (mimeType.startsWith("text/") || mimeType.endsWith("javascript") || mimeType.endsWith("json") ||
+				mimeType.endsWith("+xml")) ? "utf-8" : null;
+
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+			Map<String, String> headers = new HashMap<String, String>();
+			String cacheControl = this.cacheControl;
+			if (cacheControl != null) {
+				headers.put("Cache-Control", cacheControl);
+			}
+			return new WebResourceResponse(mimeType, encoding, 200, "OK", headers, stream);
+		}
+		return new WebResourceResponse(mimeType, encoding, stream);
+	}
+
+	/**
+	 * Returns the MIME type for the given asset path, based on its extension.
+	 * @param path the path of an asset.
+	 * @return the MIME type.
+	 */
+	private static String mimeTypeOf(String path) {
+		int slash = path.lastIndexOf('/');
+		int dot = path.lastIndexOf('.');
+		if (dot <= slash) {
+			return DEFAULT_MIME_TYPE;
+		}
+		String mimeType = mimeTypes.get(path.substring(dot + 1).toLowerCase(Locale.US));
+		return (mimeType == null) ? DEFAULT_MIME_TYPE : mimeType;
+	}
+
+	/**
+	 * Reads a stream to its end.
+	 * @param input the stream.
+	 * @param expectedLength the expected number of bytes.
+	 * @return the bytes read.
+	 * @throws IOException if the stream could not be read.
+	 */
+	private static byte[] readFully(InputStream input, int expectedLength) throws IOException {
+		byte[] bytes = new byte[Math.max(expectedLength, 0)];
+		int length = 0;
+		int read;
+		while (true) {
+			if (length == bytes.length) {
+				int next = input.read();
+				if (next == -1) {
+					break;
+				}
+				// the stream was longer than expected
+				byte[] grown = new byte[Math.max(bytes.length * 2, 1024)];
+				System.arraycopy(bytes, 0, grown, 0, length);
+				bytes = grown;
+				bytes[length++] = (byte) next;
+			}
+			read = input.read(bytes, length, bytes.length - length);
+			if (read == -1) {
+				break;
+			}
+			length += read;
+		}
+
+		if (length == bytes.length) {
+			return bytes;
+		}
+		byte[] trimmed = new byte[length];
+		System.arraycopy(bytes, 0, trimmed, 0, length);
+		return trimmed;
+	}
+
+	/**
+	 * Returns true if the given strings are equal or both null.
+	 */
+	private static boolean equal(String a, String b) {
+		return (a == null) ? b == null : a.equals(b);
+	}
+
+}
@@ -0,0 +1,16 @@
+package uk.co.tealspoon.savannah;
+
+/**
+ * A CancelListener is told when the page cancels a {@link uk.co.tealspoon.savannah.Command Command}, so that the Plugin can stop the
+ * work it is doing for it.
+ * @see uk.co.tealspoon.savannah.Command#setCancelListener(CancelListener)
+ */
+public interface CancelListener {
+
+	/**
+	 * Called when the page cancels the Command, on the thread which received the cancellation. It should only signal the Plugin's
+	 * work to stop, and must not block.
+	 * @param command the cancelled Command.
+	 */
+	public void onCancel(Command command);
+}
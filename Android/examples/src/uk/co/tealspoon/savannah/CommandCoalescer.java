@@ -0,0 +1,155 @@
+package uk.co.tealspoon.savannah;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Tracks the calls to {@link uk.co.tealspoon.savannah.CoalescingPlugin CoalescingPlugin} methods which are in flight, so that identical
+ * calls can attach to the first one rather than being executed again.
+ */
+final class CommandCoalescer {
+
+	/**
+	 * A call which is executed, and the identical calls which receive its results.
+	 */
+	static final class Group {
+		private final String key;
+		private final int generation;
+		private final Command leader;
+		private final List<Command> followers = new ArrayList<Command>(2);
+		private boolean isClosed;
+		// true if the page cancelled the leader while other calls were attached to it
+		private boolean isLeaderCancelled;
+
+		private Group(String key, int generation, Command leader) {
+			this.key = key;
+			this.generation = generation;
+			this.leader = leader;
+		}
+
+		/**
+		 * Returns the call which is executed.
+		 * @return the leading call.
+		 */
+		Command getLeader() {
+			return leader;
+		}
+
+		/**
+		 * Returns the calls which receive the results of the executed call. The list does not change once the group is closed.
+		 * @return the following calls.
+		 */
+		List<Command> getFollowers() {
+			return followers;
+		}
+	}
+
+	private final HashMap<String, Group> openGroups = new HashMap<String, Group>();
+
+	/**
+	 * Creates the key for a call to a Plugin method. Calls with different priorities have different keys, so that a call never waits
+	 * at a lower priority than its own.
+	 * @param pluginName the name of the Plugin.
+	 * @param action the name of the method.
+	 * @param priority the {@link uk.co.tealspoon.savannah.CommandPriority priority} of the call.
+	 * @param argumentsJSON the JSON array of arguments of the call.
+	 * @return the key, or null if the call can't be coalesced because its arguments are binary or malformed.
+	 */
+	static String keyFor(String pluginName, String action, int priority, String argumentsJSON) {
+		String arguments = ResultCache.canonicalize(argumentsJSON);
+		return (arguments == null) ? null : pluginName + '\0' + action + '\0' + priority + '\0' + arguments;
+	}
+
+	/**
+	 * Attaches a Command to the open group for its key, or opens a group led by the Command if there is none.
+	 * @param key the key of the Command's call.
+	 * @param command the Command.
+	 * @return true if the Command joined an existing group and should not be executed.
+	 */
+	synchronized boolean join(String key, Command command) {
+		Group group = openGroups.get(key);
+		// a group left open by a page which has since been unloaded will never send its results
+		if (group != null && group.generation == command.getGeneration()) {
+			group.followers.add(command);
+			command.setCoalescingGroup(group);
+			return true;
+		}
+
+		group = new Group(key, command.getGeneration(), command);
+		openGroups.put(key, group);
+		command.setCoalescingGroup(group);
+		return false;
+	}
+
+	/**
+	 * Closes a group to new followers. Called when its executed Command sends its first result, since a call which joined later
+	 * would miss the results already sent.
+	 * @param group the group.
+	 */
+	synchronized void close(Group group) {
+		group.isClosed = true;
+		if (openGroups.get(group.key) == group) {
+			openGroups.remove(group.key);
+		}
+	}
+
+	/**
+	 * Removes a Command which the page has cancelled from its group, and returns the Commands which should be cancelled as a result. A
+	 * cancelled follower no longer receives results. A leader which other calls are still attached to is not cancelled, since they
+	 * need its results, but it is cancelled along with the last of them; a group whose leader is cancelled is closed, so that no call
+	 * attaches to a cancelled Command.
+	 * @param command the Command which the page has cancelled.
+	 * @return the Commands to cancel, which may be empty, or include the leader of the Command's group.
+	 */
+	synchronized List<Command> cancel(Command command) {
+		Group group = command.getCoalescingGroup();
+		if (group == null) {
+			return Collections.singletonList(command);
+		}
+
+		if (group.leader != command) {
+			// the followers of a closed group are being sent its results, so the list is left alone and the results are dropped
+			if (!group.isClosed) {
+				group.followers.remove(command);
+			}
+			if (group.isLeaderCancelled && !hasLiveFollowers(group, command)) {
+				close(group);
+				return Arrays.asList(command, group.leader);
+			}
+			return Collections.singletonList(command);
+		}
+
+		if (hasLiveFollowers(group, null)) {
+			group.isLeaderCancelled = true;
+			return Collections.emptyList();
+		}
+		close(group);
+		return Collections.singletonList(command);
+	}
+
+	/**
+	 * Returns true if a group has followers which have not been cancelled.
+	 * @param group the group.
+	 * @param excluded a follower which is being cancelled, or null.
+	 * @return true if any other follower still needs the leader's results.
+	 */
+	private static boolean hasLiveFollowers(Group group, Command excluded) {
+		for (Command follower : group.followers) {
+			if (follower != excluded && !follower.isCancelled()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Closes all groups. Called when a new page loads, since the Commands of the old page are no longer pending.
+	 */
+	synchronized void clear() {
+		openGroups.clear();
+	}
+
+}
@@ -0,0 +1,111 @@
+package uk.co.tealspoon.savannah;
+
+import android.util.SparseArray;
+
+/**
+ * A thread-safe registry of the pending {@link uk.co.tealspoon.savannah.Command Commands} for a WebViewManager, keyed by callback ID.
+ * The registry is split into stripes, each with its own lock, so that Commands completing on many threads at once do not contend
+ * on a single lock. Each time a new page is bound to the manager, the registry moves to a new generation; Commands registered for
+ * a previous generation can no longer be found, even if the new page reuses their callback IDs.
+ */
+final class CommandRegistry {
+
+	// must be a power of two
+	private static final int STRIPE_COUNT = 16;
+
+	private final SparseArray<Command>[] stripes;
+	private volatile int generation;
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	CommandRegistry() {
+		stripes = new SparseArray[STRIPE_COUNT];
+		for (int i = 0; i < STRIPE_COUNT; i += 1) {
+			stripes[i] = new SparseArray<Command>();
+		}
+	}
+
+	private SparseArray<Command> stripeFor(int callbackId) {
+		// callback IDs are sequential, so consecutive Commands land on different stripes
+		return stripes[callbackId & (STRIPE_COUNT - 1)];
+	}
+
+	/**
+	 * Returns the current generation of the registry.
+	 * @return the current generation.
+	 */
+	int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Discards all pending Commands and moves the registry to a new generation. Must not be called concurrently with itself.
+	 */
+	void reset() {
+		// move to the new generation first so that a concurrent add for the old generation is either rejected or cleared below
+		generation += 1;
+		for (SparseArray<Command> stripe : stripes) {
+			synchronized (stripe) {
+				stripe.clear();
+			}
+		}
+	}
+
+	/**
+	 * Registers the given Command as pending.
+	 * @param command the Command to register.
+	 * @return true if the Command was registered, false if a Command with the same callback ID is already pending or the registry
+	 * has moved on from the Command's generation.
+	 */
+	boolean add(Command command) {
+		int callbackId = command.getCallbackId();
+		SparseArray<Command> stripe = stripeFor(callbackId);
+		synchronized (stripe) {
+			if (command.getGeneration() != generation || stripe.get(callbackId) != null) {
+				return false;
+			}
+			stripe.put(callbackId, command);
+			return true;
+		}
+	}
+
+	/**
+	 * Returns true if the given Command is pending.
+	 * @param command the Command to look for.
+	 * @return true if the given Command is pending, false otherwise.
+	 */
+	boolean contains(Command command) {
+		SparseArray<Command> stripe = stripeFor(command.getCallbackId());
+		synchronized (stripe) {
+			return stripe.get(command.getCallbackId()) == command;
+		}
+	}
+
+	/**
+	 * Returns the pending Command with the given callback ID.
+	 * @param callbackId the callback ID.
+	 * @return the Command, or null if no Command with the callback ID is pending.
+	 */
+	Command get(int callbackId) {
+		SparseArray<Command> stripe = stripeFor(callbackId);
+		synchronized (stripe) {
+			return stripe.get(callbackId);
+		}
+	}
+
+	/**
+	 * Removes the given Command if it is pending.
+	 * @param command the Command to remove.
+	 * @return true if the Command was pending and has been removed, false otherwise.
+	 */
+	boolean remove(Command command) {
+		int callbackId = command.getCallbackId();
+		SparseArray<Command> stripe = stripeFor(callbackId);
+		synchronized (stripe) {
+			if (stripe.get(callbackId) != command) {
+				return false;
+			}
+			stripe.remove(callbackId);
+			return true;
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package uk.co.tealspoon.savannah;
+
+import java.util.concurrent.Executor;
+
+/**
+ * An ExecutorPlugin is a {@link uk.co.tealspoon.savannah.Plugin Plugin} which chooses the Executor on which its
+ * {@link #execute execute} method is invoked. Plugins which do not implement this interface are executed on the
+ * {@link uk.co.tealspoon.savannah.WebViewManager WebViewManager}'s default Executor.
+ * @see uk.co.tealspoon.savannah.PluginExecutors
+ */
+public interface ExecutorPlugin extends Plugin {
+
+	/**
+	 * Returns the Executor on which this Plugin's commands should be executed. This method is called for every command, so it should
+	 * return the same Executor each time rather than creating a new one.
+	 * @return the Executor for this Plugin, or null to use the WebViewManager's default Executor.
+	 */
+	public Executor getExecutor();
+}
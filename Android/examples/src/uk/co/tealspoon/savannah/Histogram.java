@@ -0,0 +1,129 @@
+package uk.co.tealspoon.savannah;
+
+/**
+ * An immutable snapshot of a distribution of values, such as the times taken to execute a Plugin method. Values are counted in buckets
+ * whose bounds grow exponentially, with four buckets for each power of two, so percentiles are accurate to within 25% of the true value
+ * whatever its magnitude.
+ */
+public final class Histogram {
+
+	// values below SUB_BUCKET_COUNT each have a bucket of their own; above that, each power of two is split into SUB_BUCKET_COUNT buckets
+	private static final int SUB_BUCKET_BITS = 2;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * The number of buckets needed to count any non-negative long.
+	 */
+	static final int BUCKET_COUNT = indexOf(Long.MAX_VALUE) + 1;
+
+	private final long[] counts;
+	private final long count;
+	private final long sum;
+
+	/**
+	 * Creates a new snapshot of the given bucket counts.
+	 * @param counts the number of values in each bucket, which is not copied.
+	 * @param sum the sum of all of the values.
+	 */
+	Histogram(long[] counts, long sum) {
+		long count = 0;
+		for (long bucketCount : counts) {
+			count += bucketCount;
+		}
+		this.counts = counts;
+		this.count = count;
+		this.sum = sum;
+	}
+
+	/**
+	 * Returns the index of the bucket which counts the given value.
+	 * @param value a non-negative value.
+	 * @return the index of the bucket.
+	 */
+	static int indexOf(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+	}
+
+	/**
+	 * Returns the smallest value counted by the bucket with the given index.
+	 * @param index the index of the bucket.
+	 * @return the smallest value in the bucket.
+	 */
+	static long lowestValueOf(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+		long subBucket = index % SUB_BUCKET_COUNT;
+		return (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+	}
+
+	/**
+	 * Returns the largest value counted by the bucket with the given index.
+	 * @param index the index of the bucket.
+	 * @return the largest value in the bucket.
+	 */
+	private static long highestValueOf(int index) {
+		return index + 1 < BUCKET_COUNT ? lowestValueOf(index + 1) - 1 : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Returns the number of values recorded.
+	 * @return the number of values.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the sum of the values recorded.
+	 * @return the sum of the values.
+	 */
+	public long getSum() {
+		return sum;
+	}
+
+	/**
+	 * Returns the mean of the values recorded.
+	 * @return the mean, or 0 if no values have been recorded.
+	 */
+	public double getMean() {
+		return count == 0 ? 0 : (double) sum / count;
+	}
+
+	/**
+	 * Returns an upper bound for the given percentile of the values recorded.
+	 * @param percentile the percentile, from 0 to 100.
+	 * @return the largest value in the bucket which holds the percentile, or 0 if no values have been recorded.
+	 */
+	public long getPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("Percentile should be between 0 and 100");
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return highestValueOf(i);
+			}
+		}
+		return highestValueOf(counts.length - 1);
+	}
+
+	/**
+	 * Returns an upper bound for the largest value recorded.
+	 * @return the largest value in the highest non-empty bucket, or 0 if no values have been recorded.
+	 */
+	public long getMax() {
+		return getPercentile(100);
+	}
+}
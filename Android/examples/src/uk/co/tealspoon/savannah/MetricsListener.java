@@ -0,0 +1,17 @@
+package uk.co.tealspoon.savannah;
+
+import java.util.List;
+
+/**
+ * A MetricsListener is periodically given the metrics recorded by a {@link uk.co.tealspoon.savannah.WebViewManager WebViewManager}.
+ * @see uk.co.tealspoon.savannah.WebViewManager#setMetricsListener(MetricsListener, long)
+ */
+public interface MetricsListener {
+
+	/**
+	 * Called on the UI thread with a snapshot of the metrics recorded since metrics were enabled or last reset.
+	 * @param manager the WebViewManager which recorded the metrics.
+	 * @param metrics the metrics for each Plugin method which has been called.
+	 */
+	public void onMetrics(WebViewManager manager, List<MethodMetrics> metrics);
+}
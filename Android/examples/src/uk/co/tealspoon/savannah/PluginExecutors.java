@@ -0,0 +1,145 @@
+package uk.co.tealspoon.savannah;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Factory methods for the Executors used to run {@link uk.co.tealspoon.savannah.Plugin Plugin} commands.
+ */
+public final class PluginExecutors {
+
+	private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+	private static final int SHARED_POOL_SIZE = Math.max(2, Math.min(CPU_COUNT - 1, 4));
+	private static final int KEEP_ALIVE_SECONDS = 30;
+
+	private static ThreadPoolExecutor sharedExecutor;
+	private static Executor uiThreadExecutor;
+
+	private PluginExecutors() {
+	}
+
+	/**
+	 * Returns the bounded thread pool shared by all WebViewManagers. Commands executed on this Executor may run at the same time as,
+	 * and complete in a different order to, other commands, including commands for the same Plugin. Waiting commands are run in
+	 * order of their {@link uk.co.tealspoon.savannah.CommandPriority priority}.
+	 * @return the shared Executor.
+	 */
+	public static synchronized Executor shared() {
+		if (sharedExecutor == null) {
+			final AtomicInteger threadCount = new AtomicInteger(1);
+			sharedExecutor = new PriorityThreadPoolExecutor(SHARED_POOL_SIZE, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					return new Thread(runnable, "Savannah #" + threadCount.getAndIncrement());
+				}
+			});
+			sharedExecutor.allowCoreThreadTimeOut(true);
+		}
+		return sharedExecutor;
+	}
+
+	/**
+	 * Returns a new Executor which runs commands one at a time, in the order they were received, on the shared thread pool.
+	 * @return a new serial Executor.
+	 */
+	public static Executor serial() {
+		return new SerialExecutor(shared());
+	}
+
+	/**
+	 * Returns a new Executor which runs up to the given number of commands at the same time on dedicated threads. Waiting commands are
+	 * run in order of their {@link uk.co.tealspoon.savannah.CommandPriority priority}.
+	 * @param threadCount the maximum number of commands to run at the same time.
+	 * @return a new parallel Executor.
+	 */
+	public static Executor parallel(int threadCount) {
+		if (threadCount < 1) {
+			throw new IllegalArgumentException("Thread count should be at least 1");
+		}
+		ThreadPoolExecutor executor = new PriorityThreadPoolExecutor(threadCount, Executors.defaultThreadFactory());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Returns an Executor which runs commands on the UI thread, in the order they were received.
+	 * @return the UI thread Executor.
+	 */
+	public static synchronized Executor uiThread() {
+		if (uiThreadExecutor == null) {
+			final Handler handler = new Handler(Looper.getMainLooper());
+			uiThreadExecutor = new Executor() {
+				@Override
+				public void execute(Runnable runnable) {
+					handler.post(runnable);
+				}
+			};
+		}
+		return uiThreadExecutor;
+	}
+
+	/**
+	 * A fixed size thread pool which runs waiting tasks in order of priority. Tasks which are not
+	 * {@link uk.co.tealspoon.savannah.PrioritizedTask PrioritizedTasks} are given normal priority.
+	 */
+	private static final class PriorityThreadPoolExecutor extends ThreadPoolExecutor {
+
+		PriorityThreadPoolExecutor(int threadCount, ThreadFactory threadFactory) {
+			super(threadCount, threadCount, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(), threadFactory);
+		}
+
+		@Override
+		public void execute(Runnable runnable) {
+			if (runnable == null) {
+				throw new NullPointerException();
+			}
+			super.execute(runnable instanceof PrioritizedTask ? runnable : new PrioritizedTask(CommandPriority.NORMAL, runnable));
+		}
+	}
+
+	/**
+	 * An Executor which passes tasks to another Executor one at a time.
+	 */
+	private static final class SerialExecutor implements Executor {
+		private final Executor executor;
+		private final ArrayDeque<Runnable> tasks = new ArrayDeque<Runnable>();
+		private Runnable active;
+
+		SerialExecutor(Executor executor) {
+			this.executor = executor;
+		}
+
+		@Override
+		public synchronized void execute(final Runnable runnable) {
+			tasks.offer(new Runnable() {
+				public void run() {
+					try {
+						runnable.run();
+					}
+					finally {
+						scheduleNext();
+					}
+				}
+			});
+			if (active == null) {
+				scheduleNext();
+			}
+		}
+
+		private synchronized void scheduleNext() {
+			active = tasks.poll();
+			if (active != null) {
+				executor.execute(active);
+			}
+		}
+	}
+}
@@ -0,0 +1,12 @@
+package uk.co.tealspoon.savannah;
+
+/**
+ * A PooledCommandPlugin is a {@link uk.co.tealspoon.savannah.Plugin Plugin} whose {@link uk.co.tealspoon.savannah.Command Commands}
+ * are recycled once they have sent their final result, so that frequently called methods do not allocate a new Command for every call.
+ * <p>
+ * A recycled Command is reused for a later call, so a PooledCommandPlugin must not use a Command, or a
+ * {@link uk.co.tealspoon.savannah.ResultStream ResultStream} opened from it, after the Command has sent its final result with
+ * success, error or by closing the stream.
+ */
+public interface PooledCommandPlugin extends Plugin {
+}
@@ -0,0 +1,52 @@
+package uk.co.tealspoon.savannah;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A task with a {@link uk.co.tealspoon.savannah.CommandPriority priority}, ordered in a priority queue by a virtual deadline: the time
+ * it was created plus a grace period which is longer for lower priorities. A task is overtaken by tasks of a higher priority created
+ * within its grace period, but never by tasks created after it, so low priority tasks are delayed by at most their grace period
+ * however many high priority tasks follow them. Tasks with the same deadline run in the order they were created.
+ */
+final class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+
+	private static final long[] GRACE_NANOS = {
+		TimeUnit.MILLISECONDS.toNanos(500),	// LOW
+		TimeUnit.MILLISECONDS.toNanos(50),	// NORMAL
+		0									// HIGH
+	};
+
+	private static final AtomicLong sequence = new AtomicLong();
+
+	private final Runnable runnable;
+	private final long deadlineNanos;
+	private final long sequenceNumber;
+
+	/**
+	 * Creates a new task.
+	 * @param priority the priority of the task.
+	 * @param runnable the work to run.
+	 */
+	PrioritizedTask(int priority, Runnable runnable) {
+		this.runnable = runnable;
+		this.deadlineNanos = System.nanoTime() + GRACE_NANOS[priority];
+		this.sequenceNumber = sequence.getAndIncrement();
+	}
+
+	@Override
+	public void run() {
+		runnable.run();
+	}
+
+	@Override
+	public int compareTo(PrioritizedTask other) {
+		// compare differences, since nanoTime may wrap
+		long difference = deadlineNanos - other.deadlineNanos;
+		if (difference != 0) {
+			return difference < 0 ? -1 : 1;
+		}
+		return sequenceNumber < other.sequenceNumber ? -1 : (sequenceNumber == other.sequenceNumber ? 0 : 1);
+	}
+
+}
@@ -0,0 +1,19 @@
+package uk.co.tealspoon.savannah;
+
+/**
+ * A TimeoutPlugin is a {@link uk.co.tealspoon.savannah.Plugin Plugin} whose methods have default timeouts. A call which has not sent its
+ * final result by its deadline fails with the error "Timeout", and is then treated as cancelled: it is not executed if it is still
+ * waiting for its Executor, and its later results are dropped before they are serialized. A timeout set by the page for a call, with
+ * savannah.withTimeout, overrides the method's timeout. Calls with timeouts are not coalesced, so a timeout only fails its own
+ * call.
+ * @see uk.co.tealspoon.savannah.Command#remainingTimeMillis()
+ */
+public interface TimeoutPlugin extends Plugin {
+
+	/**
+	 * Returns the default timeout of calls to the given method.
+	 * @param action the name of a method of this Plugin.
+	 * @return the timeout in milliseconds, or 0 if calls to the method have no timeout.
+	 */
+	public long getTimeoutMillis(String action);
+}
@@ -0,0 +1,43 @@
+package uk.co.tealspoon.savannah;
+
+/**
+ * A Tracer receives the stages of the bridge between the WebView and its Plugins as sections of a trace, so that they can be seen
+ * alongside the rest of the app in a system trace. Synchronous sections are nested on the thread which begins them; asynchronous
+ * sections may end on a different thread, and are identified by their name and cookie, which is the callback ID of the command.
+ * @see uk.co.tealspoon.savannah.SystraceTracer
+ * @see uk.co.tealspoon.savannah.WebViewManager#setTracer(Tracer)
+ */
+public interface Tracer {
+
+	/**
+	 * Returns whether trace sections are being recorded. When this returns false, no other methods are called, and no section names
+	 * are built. This is called for every stage of every command, so it should be cheap.
+	 * @return true if tracing is enabled.
+	 */
+	public boolean isEnabled();
+
+	/**
+	 * Begins a section on the current thread.
+	 * @param name the name of the section.
+	 */
+	public void beginSection(String name);
+
+	/**
+	 * Ends the most recently begun section on the current thread.
+	 */
+	public void endSection();
+
+	/**
+	 * Begins an asynchronous section.
+	 * @param name the name of the section.
+	 * @param cookie the callback ID of the command that the section belongs to.
+	 */
+	public void beginAsyncSection(String name, int cookie);
+
+	/**
+	 * Ends an asynchronous section.
+	 * @param name the name of the section, as passed to {@link #beginAsyncSection(String, int)}.
+	 * @param cookie the cookie of the section, as passed to {@link #beginAsyncSection(String, int)}.
+	 */
+	public void endAsyncSection(String name, int cookie);
+}
@@ -0,0 +1,102 @@
+package uk.co.tealspoon.savannah;
+
+import android.annotation.TargetApi;
+import android.net.Uri;
+import android.os.Build;
+import android.webkit.WebMessage;
+import android.webkit.WebMessagePort;
+import android.webkit.WebView;
+
+import java.net.URL;
+
+/**
+ * Sends results to savannah.js over a WebMessagePort, which avoids compiling a new script for every result. A transport is opened for
+ * each page load, and only becomes ready once savannah.js has acknowledged the port, so pages which can't use it are unaffected.
+ * The port is only offered to the origin of the page Savannah was set up for, so pages without an origin, such as file URLs,
+ * don't get a transport.
+ * Only available on Android Marshmallow (23) and later.
+ */
+@TargetApi(Build.VERSION_CODES.M)
+final class WebMessageTransport {
+
+	private static final String PORT_MESSAGE = "savannah:port";
+	private static final String READY_MESSAGE = "savannah:ready";
+
+	private final WebMessagePort port;
+	private volatile boolean isReady;
+	private volatile boolean isClosed;
+
+	private WebMessageTransport(WebMessagePort port) {
+		this.port = port;
+		port.setWebMessageCallback(new WebMessagePort.WebMessageCallback() {
+			@Override
+			public void onMessage(WebMessagePort port, WebMessage message) {
+				if (READY_MESSAGE.equals(message.getData())) {
+					isReady = true;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Creates a message channel and passes one end of it to the page loaded in the given WebView, if that page is still from the
+	 * origin of the given URL. Must be called on the UI thread.
+	 * @param webView the WebView to open the transport to.
+	 * @param pageUrl the URL of the page Savannah was set up for.
+	 * @return the new transport, or null if the page has no origin to send the port to.
+	 */
+	static WebMessageTransport open(WebView webView, URL pageUrl) {
+		String origin = originOf(pageUrl);
+
+		if (origin == null) {
+			return null;
+		}
+
+		WebMessagePort[] ports = webView.createWebMessageChannel();
+		WebMessageTransport transport = new WebMessageTransport(ports[0]);
+		webView.postWebMessage(new WebMessage(PORT_MESSAGE, new WebMessagePort[] { ports[1] }), Uri.parse(origin));
+		return transport;
+	}
+
+	/**
+	 * Returns the origin of a URL, as a scheme, host and port if it has one.
+	 * @param url the URL.
+	 * @return the origin, or null if the URL has no host.
+	 */
+	private static String originOf(URL url) {
+		String host = url.getHost();
+
+		if (host == null || host.isEmpty()) {
+			return null;
+		}
+
+		String origin = url.getProtocol() + "://" + host;
+		return url.getPort() == -1 ? origin : origin + ":" + url.getPort();
+	}
+
+	/**
+	 * Returns true once savannah.js is listening on the transport.
+	 * @return true if results can be sent on this transport, false otherwise.
+	 */
+	boolean isReady() {
+		return isReady && !isClosed;
+	}
+
+	/**
+	 * Sends a JSON array of results to savannah.js. Must be called on the UI thread.
+	 * @param results the results to send.
+	 */
+	void post(String results) {
+		if (!isClosed) {
+			port.postMessage(new WebMessage(results));
+		}
+	}
+
+	/**
+	 * Closes the transport. Must be called on the UI thread.
+	 */
+	void close() {
+		isClosed = true;
+		port.close();
+	}
+}
@@ -2,11 +2,16 @@ package uk.co.tealspoon.savannah;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -14,9 +19,13 @@ import android.app.Activity;
 import android.graphics.Bitmap;
 import android.net.http.SslError;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.KeyEvent;
 import android.webkit.HttpAuthHandler;
 import android.webkit.JavascriptInterface;
@@ -31,19 +40,131 @@ import android.webkit.WebViewClient;
  */
 public class WebViewManager {
 
+	/**
+	 * Result batching window which disables result batching. Each result is sent to the WebView as soon as it is available.
+	 */
+	public static final long RESULT_BATCHING_DISABLED = -1;
+
+	/**
+	 * Result batching window which sends all queued results to the WebView once per display frame.
+	 */
+	public static final long RESULT_BATCHING_PER_FRAME = 0;
+
+	/**
+	 * The default maximum number of characters sent to the WebView at once by a {@link uk.co.tealspoon.savannah.ResultStream ResultStream}.
+	 */
+	public static final int DEFAULT_RESULT_CHUNK_SIZE = 32 * 1024;
+
+	/**
+	 * The default number of Commands which may wait to be executed before savannah.js is asked to back off.
+	 */
+	public static final int DEFAULT_COMMAND_BACKLOG_LIMIT = 64;
+
+	/**
+	 * The default maximum number of results of {@link uk.co.tealspoon.savannah.CacheablePlugin CacheablePlugin} methods which are cached.
+	 */
+	public static final int DEFAULT_RESULT_CACHE_SIZE = 256;
+
+	private static final String JAVASCRIPT_INTERFACE_NAME = "savannahJSI";
+
+	private static final String CALLBACK_SCRIPT_PREFIX = "window.savannah._callback(";
+	private static final String CALLBACK_SCRIPT_SUFFIX = ");";
+	private static final String CALLBACK_MESSAGE_PREFIX = "[[";
+	private static final String CALLBACK_MESSAGE_SUFFIX = "]]";
+	private static final String BATCH_SCRIPT_PREFIX = "window.savannah._callbacks([";
+	private static final String BATCH_SCRIPT_SUFFIX = "]);";
+	private static final String BATCH_MESSAGE_PREFIX = "[";
+	private static final String BATCH_MESSAGE_SUFFIX = "]";
+	private static final String EVENTS_SCRIPT_PREFIX = "window.savannah._events([";
+	private static final String EVENTS_SCRIPT_SUFFIX = "]);";
+	private static final String EVENTS_MESSAGE_PREFIX = "{\"events\":[";
+	private static final String EVENTS_MESSAGE_SUFFIX = "]}";
+
+	// the minimum time between flushes of high priority results which jump the UI thread's queue
+	private static final long URGENT_FLUSH_INTERVAL = 16;
+
+	private static final String TRACE_HANDLE_COMMANDS = "Savannah handleCommands";
+	private static final String TRACE_SERIALIZE_RESULT = "Savannah serialize result";
+	private static final String TRACE_UI_QUEUE = "Savannah UI thread queue";
+	private static final String TRACE_EVALUATE_JAVASCRIPT = "Savannah evaluateJavascript";
+	private static final String TRACE_POST_MESSAGE = "Savannah postMessage";
+	private static final String TRACE_FLUSH_RESULTS = "Savannah flush results";
+
 	private Activity activity;
 	private WebView webView;
 	private WebViewClient webViewClient;
 	private String name;
 	private ConfigProvider configProvider;
 
-	private HashMap<String, Command> pendingCommands;
-	private HashMap<String, Plugin> plugins;
-	private String settingsJSON;
+	private final CommandRegistry pendingCommands = new CommandRegistry();
+	private final CommandPool commandPool = new CommandPool();
+	private final EventStreams eventStreams = new EventStreams();
+	private final ResultCache resultCache = new ResultCache(DEFAULT_RESULT_CACHE_SIZE);
+	private final CommandCoalescer coalescer = new CommandCoalescer();
+	private final CommandCanceller canceller = new CommandCanceller();
+	// replaced on the UI thread when a page loads, read on the JavaBridge thread
+	private volatile Map<String, Plugin> plugins;
+	private final PageConfigCache configCache = new PageConfigCache();
+	private volatile boolean isConfigCachingEnabled = true;
+	private volatile boolean isEarlyBootstrapEnabled;
+	private volatile AssetServer assetServer;
+	// the page which was set up when it started loading, until it finishes loading. read by savannah.js on the JavaBridge thread
+	private volatile StartedPage startedPage;
+	private volatile Executor defaultExecutor = PluginExecutors.shared();
+	// Commands which have been dispatched to an Executor but have not started executing
+	private final AtomicInteger queuedCommandCount = new AtomicInteger();
+	private volatile int commandBacklogLimit = DEFAULT_COMMAND_BACKLOG_LIMIT;
+	// null while metrics are disabled
+	private volatile PluginMetrics metrics;
+	private volatile MetricsListener metricsListener;
+	private volatile long metricsReportInterval;
+	private Runnable metricsReportRunnable;
+	private volatile Tracer tracer;
 
 	private URL initialUrl;
-	private JSONObject initialSettings;
-	private Collection<Plugin> initialPlugins;
+	private PageConfig initialConfig;
+	// the page a prewarmed WebView was warmed up with, which is cleared from its history once the first real page loads
+	private URL prewarmedUrl;
+
+	private Handler uiHandler;
+	private long resultBatchingWindow = RESULT_BATCHING_DISABLED;
+	private volatile int resultChunkSize = DEFAULT_RESULT_CHUNK_SIZE;
+	private volatile boolean isWebMessagingEnabled = true;
+	private volatile WebMessageTransport messageTransport;
+	private final Object resultQueueLock = new Object();
+	private final StringBuilder resultQueue = new StringBuilder();
+	// queued results which were set aside when the queue reached the result chunk size, each to be sent on its own
+	private final ArrayDeque<String> fullResultBatches = new ArrayDeque<String>();
+	private boolean isResultFlushScheduled;
+	private boolean isFullQueueFlushScheduled;
+	private boolean isUrgentFlushScheduled;
+	private long lastUrgentFlushMillis;
+	private Runnable urgentFlushRunnable;
+	private Runnable fullQueueFlushRunnable;
+	private Runnable resultFlushRunnable;
+	private Runnable frameCallbackRunnable;
+	private Choreographer.FrameCallback frameCallback;
+	// used only on the UI thread
+	private final StringBuilder flushBuilder = new StringBuilder();
+	private final StringBuilder eventBuilder = new StringBuilder();
+	private final Runnable eventDeliveryRunnable = new Runnable() {
+		public void run() {
+			deliverEvents();
+		}
+	};
+
+	/**
+	 * A page which was set up for Savannah when it started loading.
+	 */
+	private static final class StartedPage {
+		final String url;
+		final PageConfig config;
+
+		StartedPage(String url, PageConfig config) {
+			this.url = url;
+			this.config = config;
+		}
+	}
 
 	/**
 	 * Internal class for low-level communication with the WebView.
@@ -62,12 +183,33 @@ public class WebViewManager {
 		/**
 		 * Method called by the WebView to send commands to the native application.
 		 * @param commands an array of commands represented as a JSON string.
-		 * @return the empty string.
+		 * @return the number of queued commands if the command backlog is over its limit, otherwise null.
 		 */
 		@JavascriptInterface
 		public String exec(String commands) {
-			manager.handleCommands(commands);
-			return null;
+			return manager.handleCommands(commands, null);
+		}
+
+		/**
+		 * Method called by the WebView to send commands with binary arguments to the native application.
+		 * @param commands an array of commands represented as a JSON string.
+		 * @param binary the binary arguments of the commands, as a string with one character per byte.
+		 * @return the number of queued commands if the command backlog is over its limit, otherwise null.
+		 */
+		@JavascriptInterface
+		public String execWithBinary(String commands, String binary) {
+			return manager.handleCommands(commands, binary);
+		}
+
+		/**
+		 * Method called by savannah.js when it starts running, to fetch the settings and plugins for the page without waiting for the
+		 * page to finish loading.
+		 * @param url the URL of the page.
+		 * @return the arguments to savannah.js's _didFinishLoad function as a JSON array, or null if the page has not been set up yet.
+		 */
+		@JavascriptInterface
+		public String bootstrap(String url) {
+			return manager.bootstrapArgumentsForUrl(url);
 		}
 	}
 	
@@ -81,21 +223,35 @@ public class WebViewManager {
 	 */
 	public WebViewManager(@NonNull String name, @NonNull final WebView webView, @NonNull final Activity activity,
 						  @NonNull JSONObject settings, @NonNull Collection<Plugin> pluginsCollection, @NonNull final URL url) {
-		
+		this(name, webView, activity, settings, pluginsCollection, url, null);
+	}
+
+	/**
+	 * Creates a new WebViewManager which manages the given WebView, which may have been prewarmed by a
+	 * {@link uk.co.tealspoon.savannah.WebViewManagerPool WebViewManagerPool}.
+	 * @param prewarmedUrl the URL of the page the WebView was warmed up with, or null if the WebView should not have been loaded.
+	 */
+	WebViewManager(String name, WebView webView, Activity activity, JSONObject settings, Collection<Plugin> pluginsCollection,
+				   URL url, URL prewarmedUrl) {
+
 		this.name = name;
 		this.webView = webView;
 		this.activity = activity;
 
 		this.initialUrl = url;
 
+		JSONObject initialSettings = null;
 		try {
-			this.initialSettings = new JSONObject(settings.toString());
+			initialSettings = new JSONObject(settings.toString());
 		}
 		catch (JSONException e) {
 			// impossible
 		}
 
-		this.initialPlugins = new ArrayList<Plugin>(pluginsCollection);
+		// the settings and plugins never change, so the configuration is built once for every page load
+		this.initialConfig = PageConfig.create(new ArrayList<Plugin>(pluginsCollection), initialSettings);
+
+		this.prewarmedUrl = prewarmedUrl;
 
 		init();
 	}
@@ -109,6 +265,15 @@ public class WebViewManager {
 	 */
 	public WebViewManager(@NonNull String name, @NonNull final WebView webView, @NonNull final Activity activity,
 						  @NonNull final ConfigProvider configProvider, @NonNull final URL url) {
+		this(name, webView, activity, configProvider, url, null);
+	}
+
+	/**
+	 * Creates a new WebViewManager which manages the given WebView, which may have been prewarmed by a
+	 * {@link uk.co.tealspoon.savannah.WebViewManagerPool WebViewManagerPool}.
+	 * @param prewarmedUrl the URL of the page the WebView was warmed up with, or null if the WebView should not have been loaded.
+	 */
+	WebViewManager(String name, WebView webView, Activity activity, ConfigProvider configProvider, URL url, URL prewarmedUrl) {
 		this.name = name;
 		this.webView = webView;
 		this.activity = activity;
@@ -117,6 +282,8 @@ public class WebViewManager {
 
 		this.configProvider = configProvider;
 
+		this.prewarmedUrl = prewarmedUrl;
+
 		init();
 	}
 
@@ -126,7 +293,9 @@ public class WebViewManager {
 	private void init() {
 		assertConstructorArguments();
 
-		this.webView.addJavascriptInterface(new WebViewJavascriptInterface(this), "savannahJSI");
+		this.uiHandler = new Handler(Looper.getMainLooper());
+
+		this.webView.addJavascriptInterface(new WebViewJavascriptInterface(this), JAVASCRIPT_INTERFACE_NAME);
 
 		this.webView.setWebViewClient(createWebViewClient());
 
@@ -144,7 +313,7 @@ public class WebViewManager {
 		if (webView == null) {
 			throw new IllegalArgumentException("WebView should not be null");
 		}
-		else if (webView.getOriginalUrl() != null) {
+		else if (prewarmedUrl == null && webView.getOriginalUrl() != null) {
 			throw new IllegalArgumentException("The WebView to be managed should not be loaded or loading");
 		}
 
@@ -161,56 +330,217 @@ public class WebViewManager {
 	 * Android Jelly Bean MR2 (18) or earlier.
 	 */
 	public void executeJavaScript(String script, final ValueCallback<String> callback) {
-		final boolean useEval = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
-		final String execString = useEval ? script : ("javascript:" + script);
-		
+		final String execString = script;
+
 		activity.runOnUiThread(new Runnable() {
 			public void run() {
-				// if the activity is stopped before this runs, the webview will be null
-				if (webView != null) {
-					if (useEval) {
-						webView.evaluateJavascript(execString, callback);
-					}
-					else {
-						webView.loadUrl(execString);
-					}
-				}
+				evaluateJavaScript(execString, callback);
 			}
 		});
 	}
 
+	/**
+	 * Evaluates the given script in the WebViewManager's WebView. Must be called on the UI thread.
+	 * @param script the script to execute.
+	 * @param callback a callback to be invoked when the script execution completes, or null.
+	 */
+	private void evaluateJavaScript(String script, ValueCallback<String> callback) {
+		// if the activity is stopped before this runs, the webview will be null
+		if (webView != null) {
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+				webView.evaluateJavascript(script, callback);
+			}
+			else {
+				webView.loadUrl("javascript:" + script);
+			}
+		}
+	}
+
 	/**
 	 * Reset the internal state of the manager ready to be used by a new web page
-	 * @param pluginsCollection a collection of Plugins to be made available to the WebView.
-	 * @param settings the settings to pass to the WebView.
+	 * @param config the configuration of the new web page.
 	 */
-	private void reset(Collection<Plugin> pluginsCollection, JSONObject settings) {
-		int initialCapacity = (pluginsCollection == null) ? 0 : pluginsCollection.size();
+	private void reset(PageConfig config) {
+		this.plugins = config.getPlugins();
 
-		plugins = new HashMap<String, Plugin>(initialCapacity);
+		pendingCommands.reset();
+		coalescer.clear();
+		eventStreams.clear();
 
-		if (initialCapacity > 0) {
-			for(Plugin p : pluginsCollection) {
-				plugins.put(p.getName(), p);
-			}
+		if (messageTransport != null) {
+			messageTransport.close();
+			messageTransport = null;
+		}
+
+		// results queued for the previous page must not be delivered to the new one
+		synchronized (resultQueueLock) {
+			resultQueue.setLength(0);
+			fullResultBatches.clear();
+		}
+	}
+
+	/**
+	 * Detaches this manager from its WebView so that the WebView can be reused. The current page is reset, so results of its
+	 * commands and events published to it are dropped, and the manager does nothing from then on. Must be called on the UI thread.
+	 * @return the WebView, or null if the manager was already detached.
+	 */
+	WebView detach() {
+		WebView detachedWebView = webView;
+		if (detachedWebView == null) {
+			return null;
 		}
 
-		pendingCommands = new HashMap<String, Command>();
+		reset(PageConfig.NONE);
+		startedPage = null;
+		uiHandler.removeCallbacks(eventDeliveryRunnable);
+		if (metricsReportRunnable != null) {
+			uiHandler.removeCallbacks(metricsReportRunnable);
+		}
+		metricsListener = null;
 
-		settingsJSON = settings == null ? "{}" : settings.toString().replace("'", "\\'");
+		detachedWebView.removeJavascriptInterface(JAVASCRIPT_INTERFACE_NAME);
+		detachedWebView.setWebViewClient(new WebViewClient());
+		webView = null;
+		return detachedWebView;
 	}
 
 	/**
 	 * Finish loading the web page by notifying it that we're ready to receive commands
+	 * @param config the configuration of the web page.
+	 * @param url the URL of the web page.
+	 */
+	private void finishWebPageLoad(PageConfig config, URL url) {
+		executeJavaScript(config.getBootstrapScript(), null);
+
+		if (isWebMessagingEnabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+			try {
+				messageTransport = WebMessageTransport.open(webView, url);
+			}
+			catch (RuntimeException e) {
+				Log.w("Savannah", "Unable to open a message channel to the web page. Falling back to evaluating JavaScript.", e);
+			}
+		}
+	}
+
+	/**
+	 * Sets up a page which has started loading, if early bootstrapping is enabled, so that savannah.js can be given the page's
+	 * settings and plugins as soon as it runs. Must be called on the UI thread.
+	 * @param urlString the URL of the page.
+	 */
+	private void startWebPageLoad(String urlString) {
+		startedPage = null;
+
+		try {
+			PageConfig config = configForUrl(new URL(urlString));
+
+			if (config.isProvided()) {
+				reset(config);
+				String url = withoutFragment(urlString);
+				startedPage = new StartedPage(url, config);
+
+				// savannah.js may have run before the UI thread got here, in which case the page is still waiting to be set up
+				evaluateJavaScript("if (window.savannah && !window.savannah._getIsLoadFinished() && " +
+						"String(window.location.href).split(\"#\")[0] === " + ResultWriter.toJavaScript(url) + ") { " +
+						config.getBootstrapScript() + " }", null);
+			}
+		}
+		catch (MalformedURLException e) {
+			// the loaded url was malformed?!
+		}
+	}
+
+	/**
+	 * Returns true if the given URL is the page the WebView was warmed up with.
+	 * @param urlString the URL of a page.
+	 * @return true if the URL is the warm-up page.
+	 */
+	private boolean isPrewarmedPage(String urlString) {
+		try {
+			return prewarmedUrl.sameFile(new URL(urlString));
+		}
+		catch (MalformedURLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the bootstrap arguments for the page at the given URL if it was set up when it started loading.
+	 * @param url the URL of the page.
+	 * @return the arguments to savannah.js's _didFinishLoad function as a JSON array, or null.
+	 */
+	private String bootstrapArgumentsForUrl(String url) {
+		StartedPage page = startedPage;
+		if (page == null || url == null || !page.url.equals(withoutFragment(url))) {
+			return null;
+		}
+		return page.config.getBootstrapArguments();
+	}
+
+	/**
+	 * Returns the given URL without its fragment.
+	 * @param url a URL.
+	 * @return the URL up to its '#', if any.
+	 */
+	private static String withoutFragment(String url) {
+		int index = url.indexOf('#');
+		return index == -1 ? url : url.substring(0, index);
+	}
+
+	/**
+	 * Returns the configuration for the page at the given URL, from the cache if possible.
+	 * @param url the URL of the page that has loaded.
+	 * @return the configuration, which is {@link PageConfig#NONE} if Savannah should not be provided to the page.
+	 */
+	private PageConfig configForUrl(URL url) {
+		if (configProvider == null) {
+			if (initialUrl.getProtocol().equals(url.getProtocol()) &&
+					initialUrl.getHost().equals(url.getHost()) &&
+					initialUrl.getPort() == url.getPort() &&
+					initialUrl.getPath().equals(url.getPath())) {
+				return initialConfig;
+			}
+			return PageConfig.NONE;
+		}
+
+		String cacheKey = isConfigCachingEnabled ? configCacheKeyForUrl(url) : null;
+
+		PageConfig config = (cacheKey == null) ? null : configCache.get(cacheKey);
+		if (config == null) {
+			if (configProvider.shouldProvideSavannahForUrl(url)) {
+				config = PageConfig.create(configProvider.pluginsForUrl(url), configProvider.settingsForUrl(url));
+			}
+			else {
+				config = PageConfig.NONE;
+			}
+
+			if (cacheKey != null) {
+				configCache.put(cacheKey, config);
+			}
+		}
+		return config;
+	}
+
+	/**
+	 * Returns the key under which to cache the configuration for the given URL. Only a
+	 * {@link uk.co.tealspoon.savannah.CacheableConfigProvider CacheableConfigProvider} has its configuration cached, as other providers
+	 * may return different configuration for the same URL over time.
+	 * @param url the URL of a page.
+	 * @return the cache key, or null if the configuration should not be cached.
 	 */
-	private void finishWebPageLoad() {
-		JSONArray pluginMethods = new JSONArray();
-		for (Plugin p : plugins.values()) {
-			pluginMethods.put(new JSONArray(p.getMethods()));
+	private String configCacheKeyForUrl(URL url) {
+		if (configProvider instanceof CacheableConfigProvider) {
+			return ((CacheableConfigProvider) configProvider).configCacheKeyForUrl(url);
 		}
-		executeJavaScript("window.savannah._didFinishLoad(" + settingsJSON + ", " +
-				new JSONArray(plugins.keySet()).toString() + ", " +
-				pluginMethods.toString() + ");", null);
+		return null;
+	}
+
+	/**
+	 * Returns the transport for the current page if savannah.js is listening on it.
+	 * @return the transport, or null if results should be sent by evaluating JavaScript.
+	 */
+	private WebMessageTransport getReadyMessageTransport() {
+		WebMessageTransport transport = messageTransport;
+		return (transport != null && transport.isReady()) ? transport : null;
 	}
 
 	/**
@@ -221,29 +551,31 @@ public class WebViewManager {
 		return new WebViewClient() {
 			@Override
 			public void onPageFinished(WebView view, String loadedUrlString) {
+				// going back must not return to the page the WebView was warmed up with
+				if (prewarmedUrl != null && !isPrewarmedPage(loadedUrlString)) {
+					prewarmedUrl = null;
+					view.clearHistory();
+				}
 
 				try {
-					URL loadedUrl = new URL(loadedUrlString);
-
-					if (configProvider != null) {
-						if (configProvider.shouldProvideSavannahForUrl(loadedUrl)) {
-							Collection<Plugin> pluginsCollection = configProvider.pluginsForUrl(loadedUrl);
-							JSONObject settings = configProvider.settingsForUrl(loadedUrl);
-
-							reset(pluginsCollection, settings);
-							finishWebPageLoad();
-						}
-					}
-					else if (initialUrl.getProtocol().equals(loadedUrl.getProtocol()) &&
-							initialUrl.getHost().equals(loadedUrl.getHost()) &&
-							initialUrl.getPort() == loadedUrl.getPort() &&
-							initialUrl.getPath().equals(loadedUrl.getPath())) {
+					StartedPage page = startedPage;
+					startedPage = null;
 
-						reset(initialPlugins, initialSettings);
-						finishWebPageLoad();
+					if (page != null && page.url.equals(withoutFragment(loadedUrlString))) {
+						// the page was set up when it started loading, and may already have sent commands, so it must not be reset
+						finishWebPageLoad(page.config, new URL(page.url));
 					}
 					else {
-						Log.d("Savannah", "Savannah not provided for the URL " + loadedUrlString);
+						URL loadedUrl = new URL(loadedUrlString);
+						PageConfig config = configForUrl(loadedUrl);
+
+						if (config.isProvided()) {
+							reset(config);
+							finishWebPageLoad(config, loadedUrl);
+						}
+						else {
+							Log.d("Savannah", "Savannah not provided for the URL " + loadedUrlString);
+						}
 					}
 				}
 				catch (MalformedURLException e) {
@@ -278,6 +610,9 @@ public class WebViewManager {
 
 			@Override
 			public void onPageStarted(WebView view, String loadedUrl, Bitmap favicon) {
+				if (isEarlyBootstrapEnabled) {
+					startWebPageLoad(loadedUrl);
+				}
 				if (webViewClient != null) {
 					webViewClient.onPageStarted(view, loadedUrl, favicon);
 				}
@@ -327,6 +662,14 @@ public class WebViewManager {
 
 			@Override
 			public WebResourceResponse shouldInterceptRequest(WebView view, String url) {
+				AssetServer server = assetServer;
+				if (server != null) {
+					WebResourceResponse response = server.serve(url);
+					if (response != null) {
+						return response;
+					}
+				}
+
 				if (webViewClient != null) {
 					return webViewClient.shouldInterceptRequest(view, url);
 				}
@@ -390,71 +733,1174 @@ public class WebViewManager {
 	}
 
 	/**
-	 * Handle an array of commands.
-	 * @param commandsString a JSON array of commands.
+	 * Sets whether the configuration from a {@link uk.co.tealspoon.savannah.CacheableConfigProvider CacheableConfigProvider} is cached.
+	 * When enabled, which is the default, the provider is asked for the configuration of the first page loaded with each cache key, and
+	 * the plugins and settings it returns are reused for later loads until the cache is invalidated. Disabling caching also invalidates
+	 * the cache. The configuration from other ConfigProviders is never cached.
+	 * @param enabled true to cache configuration.
 	 */
-	private void handleCommands(final String commandsString) {
-		try {
-			JSONArray commands = new JSONArray(commandsString);
-			for(int i = 0; i < commands.length(); i += 1) {
-				
-				JSONArray command = commands.optJSONArray(i);
-				
-				if (command != null) {
-					String callbackId = command.getString(0);
-					String pluginName = command.getString(1);
-					String methodName = command.getString(2);
-					String arguments = command.getString(3);
-					
-					Plugin plugin = plugins.get(pluginName);
-					if (plugin == null) {
-						Log.e("Savannah", "Plugin " + pluginName + " not found");
-					}
-					else {
-						try {
-							JSONArray args = new JSONArray(arguments);
-							Command cmd = new Command(args, callbackId, this, activity);
-							if (pendingCommands.get(callbackId) == null) {
-								pendingCommands.put(callbackId, cmd);
-								plugin.execute(methodName, cmd);
-							}
-							else {
-								Log.e("Savannah", "Command with callback ID " + callbackId + " is already pending");
-							}
-						}
-						catch (JSONException e) {
-							Log.e("Savannah", "Malformed JSON in arguments to " + pluginName + " " + methodName + ". JSON: " + arguments);
-						}
-					}
-				}
-			}
-		} catch (JSONException e) {
-			Log.e("Savannah", "Malformed JSON in command batch. JSON: " + commandsString);
+	public void setConfigCachingEnabled(boolean enabled) {
+		isConfigCachingEnabled = enabled;
+		if (!enabled) {
+			configCache.clear();
 		}
 	}
 
 	/**
-	 * Send the result of a Plugin execution to the WebView.
-	 * @param status the status to send.
-	 * @param message the message to send.
-	 * @param keepCallback true if the callback should be kept rather than discarded.
-	 * @param callbackId the id of the callback that should receive the result.
+	 * Returns true if configuration from a {@link uk.co.tealspoon.savannah.CacheableConfigProvider CacheableConfigProvider} is cached.
+	 * @return true if configuration is cached.
 	 */
-	protected void sendPluginResult(boolean status, String message, boolean keepCallback, String callbackId) {
-		if (pendingCommands.get(callbackId) == null) {
-			Log.i("Savannah", "Command with callback ID " + callbackId + " is not pending. This could be because the page was unloaded. Ignoring.");
-			return;
+	public boolean isConfigCachingEnabled() {
+		return isConfigCachingEnabled;
+	}
+
+	/**
+	 * Discards all cached configuration, so that the {@link uk.co.tealspoon.savannah.ConfigProvider ConfigProvider} is asked again the
+	 * next time each page loads. Call this when the plugins or settings the provider returns change. The current page keeps its
+	 * configuration until it is reloaded.
+	 */
+	public void invalidateConfig() {
+		configCache.clear();
+	}
+
+	/**
+	 * Discards the cached configuration for the given URL, so that the {@link uk.co.tealspoon.savannah.ConfigProvider ConfigProvider}
+	 * is asked again the next time a page with the same cache key loads.
+	 * @param url the URL whose configuration has changed.
+	 */
+	public void invalidateConfig(@NonNull URL url) {
+		String cacheKey = configCacheKeyForUrl(url);
+		if (cacheKey != null) {
+			configCache.remove(cacheKey);
+		}
+	}
+
+	/**
+	 * Sets the Executor used to run commands for Plugins which do not provide their own. Defaults to {@link PluginExecutors#shared()}.
+	 * @param executor the Executor to use.
+	 * @see uk.co.tealspoon.savannah.ExecutorPlugin
+	 */
+	public void setDefaultExecutor(@NonNull Executor executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("Executor should not be null");
+		}
+		defaultExecutor = executor;
+	}
+
+	/**
+	 * Sets the AssetServer which serves requests for the app's assets from memory. Requests which the server does not handle are
+	 * passed on to the WebViewClient set with {@link #setWebViewClient(WebViewClient)}, if any.
+	 * @param server the AssetServer, or null to load assets normally. Defaults to null.
+	 */
+	public void setAssetServer(AssetServer server) {
+		assetServer = server;
+	}
+
+	/**
+	 * Returns the AssetServer which serves requests for the app's assets, if any.
+	 * @return the AssetServer, or null.
+	 */
+	public AssetServer getAssetServer() {
+		return assetServer;
+	}
+
+	/**
+	 * Sets whether pages are given their settings and plugins as soon as savannah.js runs, rather than once they have finished
+	 * loading. When enabled, pages are set up when they start loading, and savannah.js fetches the settings and plugins from the
+	 * manager as soon as it runs, so that {@code savannah.ready} resolves without waiting for images and other subresources.
+	 * Results are sent by evaluating JavaScript until the page finishes loading, when the message port, if any, is opened.
+	 * Takes effect from the next page load.
+	 * @param enabled true to set pages up early. Defaults to false.
+	 */
+	public void setEarlyBootstrapEnabled(boolean enabled) {
+		isEarlyBootstrapEnabled = enabled;
+	}
+
+	/**
+	 * Returns true if pages are given their settings and plugins as soon as savannah.js runs.
+	 * @return true if early bootstrapping is enabled.
+	 */
+	public boolean isEarlyBootstrapEnabled() {
+		return isEarlyBootstrapEnabled;
+	}
+
+	/**
+	 * Sets whether results should be sent to the WebView over a WebMessagePort when one is available, rather than by evaluating
+	 * JavaScript. Posting a message avoids compiling a script for every result. Message ports are only available on Android
+	 * Marshmallow (23) and later, and are used once savannah.js has acknowledged the port; results are sent by evaluating
+	 * JavaScript until then. The port is only offered to the origin of the page, so results for pages without one, such as file
+	 * URLs, are always sent by evaluating JavaScript. Takes effect from the next page load.
+	 * @param enabled true to use message ports when available, false to always evaluate JavaScript. Defaults to true.
+	 */
+	public void setWebMessagingEnabled(boolean enabled) {
+		isWebMessagingEnabled = enabled;
+	}
+
+	/**
+	 * Sets the window over which results sent by Commands are batched before being passed to the WebView. Batching results
+	 * means that many results are delivered by a single script evaluation, which greatly reduces the load on the UI thread
+	 * when Plugins send results at a high rate. Once the queued results reach the {@link #setResultChunkSize result chunk size},
+	 * they are sent without waiting for the window to end, so that each batch stays within the chunk size.
+	 * @param windowMillis the batching window in milliseconds, {@link #RESULT_BATCHING_PER_FRAME} to batch results once per
+	 * display frame, or {@link #RESULT_BATCHING_DISABLED} to send each result as soon as it is available. Defaults to
+	 * {@link #RESULT_BATCHING_DISABLED}.
+	 */
+	public void setResultBatchingWindow(long windowMillis) {
+		synchronized (resultQueueLock) {
+			resultBatchingWindow = windowMillis < 0 ? RESULT_BATCHING_DISABLED : windowMillis;
+		}
+	}
+
+	/**
+	 * Returns the window over which results are batched before being passed to the WebView.
+	 * @return the batching window in milliseconds, {@link #RESULT_BATCHING_PER_FRAME} or {@link #RESULT_BATCHING_DISABLED}.
+	 */
+	public long getResultBatchingWindow() {
+		synchronized (resultQueueLock) {
+			return resultBatchingWindow;
+		}
+	}
+
+	/**
+	 * Sets the maximum number of characters sent to the WebView at once by the {@link uk.co.tealspoon.savannah.ResultStream ResultStreams}
+	 * of this manager's Commands. Streams which are already open are not affected.
+	 * @param chunkSize the maximum number of characters in a chunk. Defaults to {@link #DEFAULT_RESULT_CHUNK_SIZE}.
+	 */
+	public void setResultChunkSize(int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size should be at least 1");
+		}
+		resultChunkSize = chunkSize;
+	}
+
+	/**
+	 * Returns the maximum number of characters sent to the WebView at once by a ResultStream.
+	 * @return the maximum number of characters in a chunk.
+	 */
+	public int getResultChunkSize() {
+		return resultChunkSize;
+	}
+
+	/**
+	 * Sets the number of Commands which may wait to be executed before savannah.js is asked to back off.
+	 * While the backlog is over the limit, savannah.js sends commands less often, in larger batches.
+	 * @param limit the maximum number of queued Commands, which must not be negative. Defaults to {@link #DEFAULT_COMMAND_BACKLOG_LIMIT}.
+	 */
+	public void setCommandBacklogLimit(int limit) {
+		if (limit < 0) {
+			throw new IllegalArgumentException("Command backlog limit must not be negative");
+		}
+		commandBacklogLimit = limit;
+	}
+
+	/**
+	 * Returns the number of Commands which may wait to be executed before savannah.js is asked to back off.
+	 * @return the maximum number of queued Commands.
+	 */
+	public int getCommandBacklogLimit() {
+		return commandBacklogLimit;
+	}
+
+	/**
+	 * Sets the maximum number of results of {@link uk.co.tealspoon.savannah.CacheablePlugin CacheablePlugin} methods which are cached.
+	 * The cache is shared by all of the pages loaded by this manager, and the least recently used results are evicted first.
+	 * @param size the maximum number of cached results, which must not be negative. Defaults to {@link #DEFAULT_RESULT_CACHE_SIZE}.
+	 */
+	public void setResultCacheSize(int size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("Result cache size must not be negative");
 		}
+		resultCache.setMaxSize(size);
+	}
+
+	/**
+	 * Discards the cached results of all methods of the named {@link uk.co.tealspoon.savannah.CacheablePlugin CacheablePlugin}, both
+	 * natively and in savannah.js. Call this when the results the Plugin would return have changed. Calls which are still running
+	 * don't cache their results, since they may be stale.
+	 * @param pluginName the name of the Plugin.
+	 */
+	public void invalidateCachedResults(@NonNull String pluginName) {
+		invalidateCachedResults(pluginName, null);
+	}
 
-		if (!keepCallback) {
-			pendingCommands.remove(callbackId);
+	/**
+	 * Discards the cached results of a method of the named {@link uk.co.tealspoon.savannah.CacheablePlugin CacheablePlugin}, both
+	 * natively and in savannah.js.
+	 * @param pluginName the name of the Plugin.
+	 * @param action the name of the method, or null for all of the Plugin's methods.
+	 */
+	public void invalidateCachedResults(@NonNull String pluginName, String action) {
+		if (pluginName == null) {
+			throw new IllegalArgumentException("Plugin name should not be null");
 		}
+		resultCache.invalidate(pluginName, action);
+		executeJavaScript("window.savannah && window.savannah._invalidate && window.savannah._invalidate("
+				+ ResultWriter.toJavaScript(pluginName) + ", " + ResultWriter.toJavaScript(action) + ");", null);
+	}
+
+	/**
+	 * Discards all cached results of {@link uk.co.tealspoon.savannah.CacheablePlugin CacheablePlugin} methods held natively. Results
+	 * cached by savannah.js are discarded when the page is next loaded.
+	 */
+	public void clearResultCache() {
+		resultCache.clear();
+	}
+
+	/**
+	 * Returns the number of Commands which have been received from the WebView but have not started executing.
+	 * @return the number of queued Commands.
+	 */
+	public int getQueuedCommandCount() {
+		return queuedCommandCount.get();
+	}
 
-		String statusString = Boolean.toString(status);
+	/**
+	 * Enables or disables metrics for Plugin methods. While enabled, the manager records how many times each method of each Plugin is
+	 * called, how long commands wait to be executed, how long they take to execute and to send their final result, how large their
+	 * results are, and how many fail. Recording is cheap enough to leave enabled in release builds. Disabling metrics discards them.
+	 * @param enabled true to record metrics. Defaults to false.
+	 * @see #getMetrics()
+	 */
+	public void setMetricsEnabled(boolean enabled) {
+		if (enabled) {
+			if (metrics == null) {
+				metrics = new PluginMetrics();
+			}
+		}
+		else {
+			metrics = null;
+		}
+	}
 
-		String execString = "window.savannah._callback('" + callbackId + "'," + statusString + "," +
-				message + "," + keepCallback + ");";
+	/**
+	 * Returns whether metrics are recorded for Plugin methods.
+	 * @return true if metrics are enabled.
+	 */
+	public boolean isMetricsEnabled() {
+		return metrics != null;
+	}
 
-		executeJavaScript(execString, null);
+	/**
+	 * Discards the metrics recorded so far, if metrics are enabled. Commands which are in progress are recorded with the old metrics.
+	 */
+	public void resetMetrics() {
+		if (metrics != null) {
+			metrics = new PluginMetrics();
+		}
+	}
+
+	/**
+	 * Returns a snapshot of the metrics recorded since metrics were enabled or last reset.
+	 * @return the metrics for each Plugin method which has been called, or an empty list if metrics are disabled.
+	 */
+	public List<MethodMetrics> getMetrics() {
+		PluginMetrics metrics = this.metrics;
+		return metrics == null ? Collections.<MethodMetrics>emptyList() : metrics.snapshot();
+	}
+
+	/**
+	 * Sets a listener which is given a snapshot of the metrics on the UI thread at a regular interval while metrics are enabled.
+	 * @param listener the listener, or null to remove the current listener.
+	 * @param intervalMillis the time between snapshots.
+	 */
+	public void setMetricsListener(MetricsListener listener, long intervalMillis) {
+		if (listener != null && intervalMillis <= 0) {
+			throw new IllegalArgumentException("Metrics interval should be positive");
+		}
+
+		if (metricsReportRunnable == null) {
+			metricsReportRunnable = new Runnable() {
+				public void run() {
+					MetricsListener listener = metricsListener;
+					if (listener != null) {
+						if (metrics != null) {
+							listener.onMetrics(WebViewManager.this, getMetrics());
+						}
+						uiHandler.postDelayed(this, metricsReportInterval);
+					}
+				}
+			};
+		}
+
+		uiHandler.removeCallbacks(metricsReportRunnable);
+		metricsListener = listener;
+		metricsReportInterval = intervalMillis;
+		if (listener != null) {
+			uiHandler.postDelayed(metricsReportRunnable, intervalMillis);
+		}
+	}
+
+	/**
+	 * Sets the Tracer which receives the stages of each command as trace sections: decoding the batch, executing the Plugin,
+	 * serializing results, waiting for the UI thread and delivering results to the WebView. Each command is also traced as an
+	 * asynchronous section, from being received to sending its final result, keyed by its callback ID.
+	 * @param tracer the Tracer to use, such as a {@link uk.co.tealspoon.savannah.SystraceTracer SystraceTracer}, or null to disable
+	 * tracing. Defaults to null.
+	 */
+	public void setTracer(Tracer tracer) {
+		this.tracer = tracer;
+	}
+
+	/**
+	 * Returns the Tracer for this manager if it is enabled.
+	 * @return the Tracer, or null if sections should not be traced.
+	 */
+	private Tracer getEnabledTracer() {
+		Tracer tracer = this.tracer;
+		return (tracer != null && tracer.isEnabled()) ? tracer : null;
+	}
+
+	/**
+	 * Publishes an event to the named stream, to be delivered to the page's subscribers according to the options they subscribed with.
+	 * Events published to a stream with no subscribers are dropped, so Plugins can publish without checking first. May be called on any
+	 * thread.
+	 * @param stream the name of the stream.
+	 * @param event the event: a JSONObject, JSONArray, String, Boolean, Number, byte[], ByteBuffer or null. The event is serialized
+	 * before this method returns, so it can be reused afterwards.
+	 * @return true if the stream has subscribers.
+	 */
+	public boolean publishEvent(String stream, Object event) {
+		if (!eventStreams.hasSubscribers(stream)) {
+			return false;
+		}
+		ResultWriter writer = ResultWriter.obtain().writeValue(event);
+		scheduleEventDelivery(eventStreams.add(stream, writer.getBuilder(), SystemClock.uptimeMillis()));
+		return true;
+	}
+
+	/**
+	 * Publishes a number to the named stream without boxing it.
+	 * @param stream the name of the stream.
+	 * @param event the event.
+	 * @return true if the stream has subscribers.
+	 * @see #publishEvent(String, Object)
+	 */
+	public boolean publishEvent(String stream, double event) {
+		if (!eventStreams.hasSubscribers(stream)) {
+			return false;
+		}
+		ResultWriter writer = ResultWriter.obtain().writeValue(event);
+		scheduleEventDelivery(eventStreams.add(stream, writer.getBuilder(), SystemClock.uptimeMillis()));
+		return true;
+	}
+
+	/**
+	 * Returns whether the page has subscribed to the named stream. Plugins can use this to stop producing events, such as by
+	 * unregistering a sensor listener, when nobody is listening.
+	 * @param stream the name of the stream.
+	 * @return true if the stream has subscribers.
+	 */
+	public boolean hasEventSubscribers(String stream) {
+		return eventStreams.hasSubscribers(stream);
+	}
+
+	/**
+	 * Schedules the delivery of events to the page.
+	 * @param delayMillis the delay before delivery, or -1 if no delivery needs to be scheduled.
+	 */
+	private void scheduleEventDelivery(long delayMillis) {
+		if (delayMillis < 0) {
+			return;
+		}
+		// an extra delivery is harmless, so there's no need to remove ones which have already been scheduled
+		uiHandler.postDelayed(eventDeliveryRunnable, delayMillis);
+	}
+
+	/**
+	 * Deliver the events which are due to the page in a single script or message. Must be called on the UI thread.
+	 */
+	private void deliverEvents() {
+		WebMessageTransport transport = getReadyMessageTransport();
+		eventBuilder.setLength(0);
+		eventBuilder.append(transport != null ? EVENTS_MESSAGE_PREFIX : EVENTS_SCRIPT_PREFIX);
+		int prefixLength = eventBuilder.length();
+
+		scheduleEventDelivery(eventStreams.drain(eventBuilder, SystemClock.uptimeMillis()));
+		if (eventBuilder.length() == prefixLength) {
+			return;
+		}
+
+		String events = eventBuilder.append(transport != null ? EVENTS_MESSAGE_SUFFIX : EVENTS_SCRIPT_SUFFIX).toString();
+		if (transport != null) {
+			transport.post(events);
+		}
+		else {
+			evaluateJavaScript(events, null);
+		}
+	}
+
+	/**
+	 * Handle an array of commands.
+	 * @param commandsString a JSON array of commands.
+	 * @param binary the binary arguments referred to by the commands, or null if there are none.
+	 * @return the number of queued commands if the command backlog is over its limit, otherwise null.
+	 */
+	private String handleCommands(final String commandsString, final String binary) {
+		// commands in this batch belong to the page that was loaded when the batch arrived
+		int generation = pendingCommands.getGeneration();
+		Map<String, Plugin> plugins = this.plugins;
+
+		Tracer tracer = getEnabledTracer();
+		if (tracer != null) {
+			tracer.beginSection(TRACE_HANDLE_COMMANDS);
+		}
+		try {
+			CommandBatchDecoder commands = new CommandBatchDecoder(commandsString);
+			while (commands.next()) {
+				// savannah.js sends callback IDs as positive integers which fit in an int
+				int callbackId = commands.getCallbackId();
+				String pluginName = commands.getPluginName();
+				String methodName = commands.getMethodName();
+
+				Plugin plugin = pluginNamed(plugins, pluginName);
+				if (plugin == null) {
+					Log.e("Savannah", "Plugin " + pluginName + " not found");
+				}
+				else {
+					// the arguments are only parsed if the Plugin asks for them
+					String arguments = commands.getArguments();
+					Command cmd = obtainCommand(plugin, arguments, binary, callbackId, generation);
+					cmd.setPriority(priorityOf(plugin, methodName, commands.getPriority()));
+					long timeoutMillis = timeoutOf(plugin, methodName, commands.getTimeoutMillis());
+					if (timeoutMillis > 0) {
+						cmd.setDeadline(SystemClock.uptimeMillis() + timeoutMillis);
+					}
+					if (pendingCommands.add(cmd)) {
+						if (timeoutMillis > 0) {
+							scheduleTimeout(cmd, timeoutMillis);
+						}
+						if (!sendCachedResult(plugin, methodName, arguments, cmd) && !coalesce(plugin, methodName, arguments, cmd)) {
+							dispatchCommand(plugin, methodName, cmd);
+						}
+					}
+					else {
+						Log.e("Savannah", "Command with callback ID " + callbackId + " is already pending");
+					}
+				}
+			}
+		} catch (JSONException e) {
+			Log.e("Savannah", "Malformed JSON in command batch. JSON: " + commandsString);
+		}
+		finally {
+			if (tracer != null) {
+				tracer.endSection();
+			}
+		}
+
+		int queued = queuedCommandCount.get();
+		return queued > commandBacklogLimit ? Integer.toString(queued) : null;
+	}
+
+	/**
+	 * Returns the named Plugin, which may be one of the built-in plugins used by savannah.js.
+	 * @param plugins the Plugins of the current page.
+	 * @param pluginName the name of the Plugin.
+	 * @return the Plugin, or null if there is none with the name.
+	 */
+	private Plugin pluginNamed(Map<String, Plugin> plugins, String pluginName) {
+		if (pluginName.equals(EventStreams.PLUGIN_NAME)) {
+			return eventStreams;
+		}
+		if (pluginName.equals(CommandCanceller.PLUGIN_NAME)) {
+			return canceller;
+		}
+		return plugins.get(pluginName);
+	}
+
+	/**
+	 * Cancels the pending Command with the given callback ID, if the page has cancelled it. The Command is no longer pending, so its
+	 * results are dropped, and if it is still waiting for its Executor, it is not executed.
+	 * @param callbackId the callback ID of the Command.
+	 */
+	void cancelCommand(int callbackId) {
+		Command command = pendingCommands.get(callbackId);
+		if (command == null) {
+			return;
+		}
+		// a coalesced call may also release the call it follows, once no other calls need its results
+		for (Command cancelled : coalescer.cancel(command)) {
+			cancelPendingCommand(cancelled);
+		}
+	}
+
+	/**
+	 * Cancels a pending Command, so that its results are dropped and it is not executed if it is still waiting for its Executor.
+	 * @param command the Command.
+	 */
+	private void cancelPendingCommand(Command command) {
+		if (!pendingCommands.remove(command) || !command.cancel()) {
+			return;
+		}
+
+		String traceName = command.getTraceName();
+		Tracer tracer = traceName != null ? getEnabledTracer() : null;
+		if (tracer != null) {
+			tracer.endAsyncSection(traceName, command.getCallbackId());
+		}
+	}
+
+	/**
+	 * Returns the priority of a call: the priority the page set, or the priority of the Plugin method if the page set none.
+	 * @param plugin the Plugin being called.
+	 * @param methodName the name of the action to perform.
+	 * @param requestedPriority the priority set by the page, or -1.
+	 * @return the {@link uk.co.tealspoon.savannah.CommandPriority priority}.
+	 */
+	private static int priorityOf(Plugin plugin, String methodName, int requestedPriority) {
+		if (requestedPriority != -1) {
+			return requestedPriority;
+		}
+		if (plugin instanceof PrioritizedPlugin) {
+			int priority = ((PrioritizedPlugin) plugin).getPriority(methodName);
+			if (CommandPriority.isValid(priority)) {
+				return priority;
+			}
+			Log.w("Savannah", "Plugin " + plugin.getName() + " returned an invalid priority for " + methodName);
+		}
+		return CommandPriority.NORMAL;
+	}
+
+	/**
+	 * Returns the timeout of a call: the timeout the page set, or the timeout of the Plugin method if the page set none.
+	 * @param plugin the Plugin being called.
+	 * @param methodName the name of the action to perform.
+	 * @param requestedTimeoutMillis the timeout set by the page, or -1.
+	 * @return the timeout in milliseconds, or 0 if the call has no timeout.
+	 */
+	private static long timeoutOf(Plugin plugin, String methodName, int requestedTimeoutMillis) {
+		if (requestedTimeoutMillis != -1) {
+			return Math.max(requestedTimeoutMillis, 0);
+		}
+		if (plugin instanceof TimeoutPlugin) {
+			return Math.max(((TimeoutPlugin) plugin).getTimeoutMillis(methodName), 0);
+		}
+		return 0;
+	}
+
+	/**
+	 * Fails the given Command with a timeout error if it is still pending when its deadline passes.
+	 * @param cmd the Command, whose deadline has been set.
+	 * @param timeoutMillis the time until the deadline.
+	 */
+	private void scheduleTimeout(final Command cmd, long timeoutMillis) {
+		// pooled Commands may have been reused for another call by the time the timeout fires
+		final int callbackId = cmd.getCallbackId();
+		final long deadline = cmd.getDeadline();
+		uiHandler.postDelayed(new Runnable() {
+			public void run() {
+				if (cmd.getCallbackId() == callbackId && cmd.getDeadline() == deadline && cmd.remainingTimeMillis() == 0
+						&& pendingCommands.contains(cmd)) {
+					cmd.expire();
+				}
+			}
+		}, timeoutMillis);
+	}
+
+	/**
+	 * Returns a Command for a call to the given Plugin, reusing a pooled Command if the Plugin allows it.
+	 * @param plugin the Plugin being called.
+	 * @param argumentsJSON the JSON array of arguments for the call.
+	 * @param binary the binary arguments referred to by argumentsJSON, or null if there are none.
+	 * @param callbackId the callback ID of the call.
+	 * @param generation the generation of the page which made the call.
+	 * @return the Command.
+	 */
+	private Command obtainCommand(Plugin plugin, String argumentsJSON, String binary, int callbackId, int generation) {
+		if (!(plugin instanceof PooledCommandPlugin)) {
+			return new Command(argumentsJSON, binary, callbackId, generation, this, activity);
+		}
+
+		Command cmd = commandPool.obtain();
+		if (cmd != null) {
+			cmd.reinitialize(argumentsJSON, binary, callbackId, generation);
+		}
+		else {
+			cmd = new Command(argumentsJSON, binary, callbackId, generation, this, activity);
+			cmd.setPool(commandPool);
+		}
+		return cmd;
+	}
+
+	/**
+	 * Answers the given Command from the result cache if the Plugin method's results are cacheable and a result for the same arguments
+	 * is cached. On a miss, the Command is given the key to cache its result under.
+	 * @param plugin the Plugin being called.
+	 * @param methodName the name of the action to perform.
+	 * @param argumentsJSON the JSON array of arguments for the call.
+	 * @param cmd the Command.
+	 * @return true if the Command was answered from the cache and should not be dispatched.
+	 */
+	private boolean sendCachedResult(Plugin plugin, String methodName, String argumentsJSON, Command cmd) {
+		if (!(plugin instanceof CacheablePlugin)) {
+			return false;
+		}
+		CachePolicy policy = ((CacheablePlugin) plugin).getCachePolicy(methodName);
+		if (policy == null) {
+			return false;
+		}
+		ResultCache.Key key = resultCache.keyFor(plugin.getName(), methodName, argumentsJSON, policy);
+		if (key == null) {
+			return false;
+		}
+
+		String result = resultCache.get(key, SystemClock.uptimeMillis());
+		if (result == null) {
+			cmd.setResultCacheKey(key);
+			return false;
+		}
+
+		PluginMetrics metrics = this.metrics;
+		if (metrics != null) {
+			PluginMetrics.MethodRecorder recorder = metrics.recorderFor(plugin.getName(), methodName);
+			recorder.recordCommand();
+			cmd.setMetricsRecorder(recorder, System.nanoTime());
+		}
+		cmd.sendCachedResult(result);
+		return true;
+	}
+
+	/**
+	 * Attaches the given Command to an identical call in flight if the Plugin method's calls are coalesced, or makes it the call which
+	 * later identical calls attach to.
+	 * @param plugin the Plugin being called.
+	 * @param methodName the name of the action to perform.
+	 * @param argumentsJSON the JSON array of arguments for the call.
+	 * @param cmd the Command.
+	 * @return true if the Command was attached to a call in flight and should not be dispatched.
+	 */
+	private boolean coalesce(Plugin plugin, String methodName, String argumentsJSON, Command cmd) {
+		if (!(plugin instanceof CoalescingPlugin) || !((CoalescingPlugin) plugin).isCoalescing(methodName)) {
+			return false;
+		}
+		// a call's timeout must only fail that call, so calls with deadlines neither lead nor follow other calls
+		if (cmd.hasDeadline()) {
+			return false;
+		}
+		String key = CommandCoalescer.keyFor(plugin.getName(), methodName, cmd.getPriority(), argumentsJSON);
+		return key != null && coalescer.join(key, cmd);
+	}
+
+	/**
+	 * Execute the given Command on the Plugin's Executor, so that slow Plugins do not hold up the WebView's JavaBridge thread.
+	 * @param plugin the Plugin to execute.
+	 * @param methodName the name of the action to perform.
+	 * @param cmd the Command to pass to the Plugin.
+	 */
+	private void dispatchCommand(final Plugin plugin, final String methodName, final Command cmd) {
+		Executor executor = null;
+		if (plugin instanceof ExecutorPlugin) {
+			executor = ((ExecutorPlugin) plugin).getExecutor();
+		}
+		if (executor == null) {
+			executor = defaultExecutor;
+		}
+
+		PluginMetrics metrics = this.metrics;
+		if (metrics != null) {
+			PluginMetrics.MethodRecorder recorder = metrics.recorderFor(plugin.getName(), methodName);
+			recorder.recordCommand();
+			cmd.setMetricsRecorder(recorder, System.nanoTime());
+		}
+
+		Tracer tracer = getEnabledTracer();
+		if (tracer != null) {
+			String traceName = "Savannah " + plugin.getName() + "." + methodName;
+			cmd.setTraceName(traceName);
+			tracer.beginAsyncSection(traceName, cmd.getCallbackId());
+		}
+
+		queuedCommandCount.incrementAndGet();
+		try {
+			Runnable task = new Runnable() {
+				public void run() {
+					queuedCommandCount.decrementAndGet();
+					if (cmd.isCancelled()) {
+						return;
+					}
+					// a call which waited past its deadline is failed rather than executed
+					if (cmd.remainingTimeMillis() == 0) {
+						cmd.expire();
+						return;
+					}
+					PluginMetrics.MethodRecorder recorder = cmd.getMetricsRecorder();
+					long receivedNanos = cmd.getReceivedNanos();
+					long startNanos = recorder != null ? System.nanoTime() : 0;
+					String traceName = cmd.getTraceName();
+					Tracer tracer = traceName != null ? getEnabledTracer() : null;
+					if (tracer != null) {
+						tracer.beginSection(traceName);
+					}
+					// a pooled Command isn't reused until execution finishes, so it is still this call's if the Plugin throws
+					cmd.beginExecution();
+					try {
+						plugin.execute(methodName, cmd);
+					}
+					catch (RuntimeException e) {
+						Log.e("Savannah", "Plugin " + plugin.getName() + " threw an exception executing " + methodName, e);
+						cmd.error();
+					}
+					finally {
+						cmd.endExecution();
+						if (tracer != null) {
+							tracer.endSection();
+						}
+						if (recorder != null) {
+							recorder.recordExecution(receivedNanos, startNanos, System.nanoTime());
+						}
+					}
+				}
+			};
+			// the shared and parallel executors order waiting tasks by priority, and give other tasks normal priority
+			int priority = cmd.getPriority();
+			executor.execute(priority == CommandPriority.NORMAL ? task : new PrioritizedTask(priority, task));
+		}
+		catch (RejectedExecutionException e) {
+			queuedCommandCount.decrementAndGet();
+			Log.e("Savannah", "Plugin " + plugin.getName() + " rejected " + methodName, e);
+			cmd.error();
+		}
+	}
+
+	/**
+	 * Send the result of a Plugin execution to the WebView.
+	 * @param command the Command whose result should be sent.
+	 * @param status the status to send.
+	 * @param message the message to send: a JSONObject, JSONArray, String, Boolean, Number, byte[], ByteBuffer or null.
+	 * @param keepCallback true if the callback should be kept rather than discarded.
+	 */
+	protected void sendPluginResult(Command command, boolean status, Object message, boolean keepCallback) {
+		sendPluginResult(command, status, message, keepCallback, false);
+	}
+
+	/**
+	 * Send the result, or a chunk of the result, of a Plugin execution to the WebView.
+	 * @param command the Command whose result should be sent.
+	 * @param status the status to send.
+	 * @param message the message to send: a JSONObject, JSONArray, String, Boolean, Number, byte[], ByteBuffer or null.
+	 * @param keepCallback true if the callback should be kept rather than discarded.
+	 * @param isChunk true if the message is a string containing part of the JSON representation of the result.
+	 */
+	void sendPluginResult(Command command, boolean status, Object message, boolean keepCallback, boolean isChunk) {
+		WebMessageTransport transport = getReadyMessageTransport();
+		Tracer tracer = getEnabledTracer();
+		ResultWriter writer = startResult(command, keepCallback, transport, tracer);
+		if (writer != null) {
+			writer.writeResult(command.getCallbackId(), status, message, keepCallback, isChunk);
+			if (!isChunk) {
+				cacheResult(command, writer, status, keepCallback, transport);
+			}
+			finishResult(command, writer, status, keepCallback, transport, tracer);
+		}
+	}
+
+	/**
+	 * Send a boolean result of a Plugin execution to the WebView without boxing it.
+	 * @param command the Command whose result should be sent.
+	 * @param status the status to send.
+	 * @param message the message to send.
+	 * @param keepCallback true if the callback should be kept rather than discarded.
+	 */
+	void sendPluginResult(Command command, boolean status, boolean message, boolean keepCallback) {
+		WebMessageTransport transport = getReadyMessageTransport();
+		Tracer tracer = getEnabledTracer();
+		ResultWriter writer = startResult(command, keepCallback, transport, tracer);
+		if (writer != null) {
+			writer.writeResult(command.getCallbackId(), status, message, keepCallback);
+			cacheResult(command, writer, status, keepCallback, transport);
+			finishResult(command, writer, status, keepCallback, transport, tracer);
+		}
+	}
+
+	/**
+	 * Send an integer result of a Plugin execution to the WebView without boxing it.
+	 * @param command the Command whose result should be sent.
+	 * @param status the status to send.
+	 * @param message the message to send.
+	 * @param keepCallback true if the callback should be kept rather than discarded.
+	 */
+	void sendPluginResult(Command command, boolean status, long message, boolean keepCallback) {
+		WebMessageTransport transport = getReadyMessageTransport();
+		Tracer tracer = getEnabledTracer();
+		ResultWriter writer = startResult(command, keepCallback, transport, tracer);
+		if (writer != null) {
+			writer.writeResult(command.getCallbackId(), status, message, keepCallback);
+			cacheResult(command, writer, status, keepCallback, transport);
+			finishResult(command, writer, status, keepCallback, transport, tracer);
+		}
+	}
+
+	/**
+	 * Send a number result of a Plugin execution to the WebView without boxing it.
+	 * @param command the Command whose result should be sent.
+	 * @param status the status to send.
+	 * @param message the message to send.
+	 * @param keepCallback true if the callback should be kept rather than discarded.
+	 */
+	void sendPluginResult(Command command, boolean status, double message, boolean keepCallback) {
+		WebMessageTransport transport = getReadyMessageTransport();
+		Tracer tracer = getEnabledTracer();
+		ResultWriter writer = startResult(command, keepCallback, transport, tracer);
+		if (writer != null) {
+			writer.writeResult(command.getCallbackId(), status, message, keepCallback);
+			cacheResult(command, writer, status, keepCallback, transport);
+			finishResult(command, writer, status, keepCallback, transport, tracer);
+		}
+	}
+
+	/**
+	 * Sends a cached result as the final successful result of the given Command.
+	 * @param command the Command whose result should be sent.
+	 * @param result the serialized result.
+	 */
+	void sendCachedResult(Command command, String result) {
+		WebMessageTransport transport = getReadyMessageTransport();
+		Tracer tracer = getEnabledTracer();
+		ResultWriter writer = startResult(command, false, transport, tracer);
+		if (writer != null) {
+			writer.getBuilder().append(command.getCallbackId()).append(",true,").append(result).append(",false");
+			finishResult(command, writer, true, false, transport, tracer);
+		}
+	}
+
+	/**
+	 * Sends a result of a coalesced call to one of the identical calls which attached to it.
+	 * @param command the attached Command.
+	 * @param status the status of the result.
+	 * @param result the serialized result, following the callback ID.
+	 * @param keepCallback true if the callback should be kept rather than discarded.
+	 */
+	void sendCoalescedResult(Command command, boolean status, String result, boolean keepCallback) {
+		WebMessageTransport transport = getReadyMessageTransport();
+		Tracer tracer = getEnabledTracer();
+		ResultWriter writer = startResult(command, keepCallback, transport, tracer);
+		if (writer != null) {
+			writer.getBuilder().append(command.getCallbackId()).append(result);
+			finishResult(command, writer, status, keepCallback, transport, tracer);
+		}
+	}
+
+	/**
+	 * Caches the result written by a ResultWriter, if it is the final successful result of a Command whose result is cacheable. The
+	 * serialized result is copied out of the writer before the end of the script or message is written.
+	 * @param command the Command whose result was written.
+	 * @param writer the ResultWriter which holds the result.
+	 * @param status the status of the result.
+	 * @param keepCallback true if the callback will be kept.
+	 * @param transport the transport passed to startResult.
+	 */
+	private void cacheResult(Command command, ResultWriter writer, boolean status, boolean keepCallback, WebMessageTransport transport) {
+		ResultCache.Key key = command.getResultCacheKey();
+		if (key == null || !status || keepCallback) {
+			return;
+		}
+
+		// the writer holds the prefix, then "callbackId,true,result,false"
+		StringBuilder builder = writer.getBuilder();
+		int start = (transport != null ? CALLBACK_MESSAGE_PREFIX.length() : CALLBACK_SCRIPT_PREFIX.length())
+				+ Integer.toString(command.getCallbackId()).length() + ",true,".length();
+		int end = builder.length() - ",false".length();
+		if (end - start <= key.policy.getMaxResultLength()) {
+			resultCache.put(key, builder.substring(start, end), SystemClock.uptimeMillis());
+		}
+	}
+
+	/**
+	 * Checks that the given Command is pending and, if it is, returns the calling thread's ResultWriter with the start of the message
+	 * or script for the given transport already written. The caller writes the result and passes the writer to
+	 * {@link #finishResult(Command, ResultWriter, boolean, boolean, WebMessageTransport, Tracer)}.
+	 * @param command the Command whose result is being sent.
+	 * @param keepCallback true if the callback should be kept rather than discarded.
+	 * @param transport the transport that the result will be sent with, or null to send it by evaluating JavaScript.
+	 * @param tracer the enabled Tracer, or null.
+	 * @return the ResultWriter, or null if the Command is not pending.
+	 */
+	private ResultWriter startResult(Command command, boolean keepCallback, WebMessageTransport transport, Tracer tracer) {
+		int callbackId = command.getCallbackId();
+
+		// check and remove in one step so that a Command completing on another thread cannot slip in between
+		boolean isPending = keepCallback ? pendingCommands.contains(command) : pendingCommands.remove(command);
+		if (!isPending) {
+			Log.i("Savannah", "Command with callback ID " + callbackId + " is not pending. This could be because the page was unloaded. Ignoring.");
+			return null;
+		}
+
+		if (tracer != null) {
+			String traceName = command.getTraceName();
+			if (traceName != null && !keepCallback) {
+				tracer.endAsyncSection(traceName, callbackId);
+			}
+			tracer.beginSection(TRACE_SERIALIZE_RESULT);
+		}
+
+		// serialize outside the lock; the writer's builder belongs to this thread. The result is written as a complete message for
+		// the current transport, and the batched path copies just the arguments out of it.
+		ResultWriter writer = ResultWriter.obtain();
+		writer.getBuilder().append(transport != null ? CALLBACK_MESSAGE_PREFIX : CALLBACK_SCRIPT_PREFIX);
+		return writer;
+	}
+
+	/**
+	 * Sends a result written by a ResultWriter obtained from {@link #startResult(Command, boolean, WebMessageTransport, Tracer)}, and
+	 * to any identical calls which were coalesced with the Command.
+	 * @param command the Command whose result is being sent.
+	 * @param writer the ResultWriter which holds the result.
+	 * @param status the status of the result.
+	 * @param keepCallback true if the callback should be kept rather than discarded.
+	 * @param transport the transport passed to startResult.
+	 * @param tracer the Tracer passed to startResult.
+	 */
+	private void finishResult(Command command, ResultWriter writer, boolean status, boolean keepCallback,
+							  WebMessageTransport transport, Tracer tracer) {
+		CommandCoalescer.Group group = command.getCoalescingGroup();
+		if (group == null || group.getLeader() != command) {
+			deliverResult(command, writer, status, keepCallback, transport, tracer);
+			return;
+		}
+
+		// calls which attach after the first result would miss it, so later identical calls are executed again
+		coalescer.close(group);
+		List<Command> followers = group.getFollowers();
+		if (followers.isEmpty()) {
+			deliverResult(command, writer, status, keepCallback, transport, tracer);
+			return;
+		}
+
+		// copy the result before the writer is reused for the followers. Everything after the callback ID is the same for each call
+		StringBuilder builder = writer.getBuilder();
+		int start = (transport != null ? CALLBACK_MESSAGE_PREFIX.length() : CALLBACK_SCRIPT_PREFIX.length())
+				+ Integer.toString(command.getCallbackId()).length();
+		String result = builder.substring(start);
+		deliverResult(command, writer, status, keepCallback, transport, tracer);
+		for (Command follower : followers) {
+			follower.sendCoalescedResult(status, result, keepCallback);
+		}
+	}
+
+	/**
+	 * Delivers a result written by a ResultWriter to the WebView. When results are batched, or the WebView is still catching up, the
+	 * result is queued without allocating.
+	 * @param command the Command whose result is being sent.
+	 * @param writer the ResultWriter which holds the result.
+	 * @param status the status of the result.
+	 * @param keepCallback true if the callback should be kept rather than discarded.
+	 * @param transport the transport passed to startResult.
+	 * @param tracer the Tracer passed to startResult.
+	 */
+	private void deliverResult(Command command, ResultWriter writer, boolean status, boolean keepCallback,
+							   final WebMessageTransport transport, final Tracer tracer) {
+		StringBuilder result = writer.getBuilder();
+		int prefixLength = transport != null ? CALLBACK_MESSAGE_PREFIX.length() : CALLBACK_SCRIPT_PREFIX.length();
+
+		if (tracer != null) {
+			tracer.endSection();
+		}
+
+		PluginMetrics.MethodRecorder recorder = command.getMetricsRecorder();
+		if (recorder != null) {
+			recorder.recordResult(result.length() - prefixLength, status, !keepCallback, command.getReceivedNanos());
+		}
+
+		synchronized (resultQueueLock) {
+			// the page may have been reset since the Command was found to be pending. The queue is cleared under this lock after the
+			// registry moves to a new generation, so checking here guarantees that the result cannot reach the new page.
+			if (command.getGeneration() != pendingCommands.getGeneration()) {
+				return;
+			}
+
+			// once a flush is scheduled, keep queueing so that results are not reordered. High priority results are always queued, so
+			// that they are delivered in order by a flush which is brought forward, ahead of other results waiting for the UI thread
+			boolean isUrgent = command.getPriority() == CommandPriority.HIGH;
+			if (resultBatchingWindow != RESULT_BATCHING_DISABLED || isResultFlushScheduled || isUrgent) {
+				if (resultQueue.length() > 0) {
+					// a full queue is set aside and sent as soon as the UI thread is free, so that batching doesn't merge the chunks of
+					// a ResultStream back into one large script, or hold them all until the window ends
+					if (resultQueue.length() + result.length() - prefixLength + 3 > resultChunkSize) {
+						fullResultBatches.add(resultQueue.toString());
+						resultQueue.setLength(0);
+						if (!isFullQueueFlushScheduled) {
+							isFullQueueFlushScheduled = true;
+							scheduleFullQueueFlush();
+						}
+					}
+					else {
+						resultQueue.append(',');
+					}
+				}
+				resultQueue.append('[').append(result, prefixLength, result.length()).append(']');
+
+				if (isUrgent) {
+					if (!isUrgentFlushScheduled) {
+						isUrgentFlushScheduled = true;
+						scheduleUrgentResultFlush();
+					}
+				}
+				else if (!isResultFlushScheduled) {
+					isResultFlushScheduled = true;
+					scheduleResultFlush();
+				}
+				return;
+			}
+		}
+
+		// the script or message is the only copy made of the result
+		final String resultString = result.append(transport != null ? CALLBACK_MESSAGE_SUFFIX : CALLBACK_SCRIPT_SUFFIX).toString();
+		final int traceCookie = command.getCallbackId();
+		if (tracer != null) {
+			tracer.beginAsyncSection(TRACE_UI_QUEUE, traceCookie);
+		}
+		activity.runOnUiThread(new Runnable() {
+			public void run() {
+				if (tracer != null) {
+					tracer.endAsyncSection(TRACE_UI_QUEUE, traceCookie);
+					tracer.beginSection(transport != null ? TRACE_POST_MESSAGE : TRACE_EVALUATE_JAVASCRIPT);
+				}
+				try {
+					if (transport != null) {
+						transport.post(resultString);
+					}
+					else {
+						evaluateJavaScript(resultString, null);
+					}
+				}
+				finally {
+					if (tracer != null) {
+						tracer.endSection();
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Schedule the queued results to be sent to the WebView at the end of the current batching window.
+	 * Must be called while holding resultQueueLock.
+	 */
+	private void scheduleResultFlush() {
+		if (resultFlushRunnable == null) {
+			resultFlushRunnable = new Runnable() {
+				public void run() {
+					flushResults();
+				}
+			};
+		}
+
+		if (resultBatchingWindow == RESULT_BATCHING_PER_FRAME && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+			if (frameCallbackRunnable == null) {
+				// the Choreographer is per-thread, so it must be retrieved on the UI thread
+				frameCallbackRunnable = new Runnable() {
+					public void run() {
+						if (frameCallback == null) {
+							frameCallback = new Choreographer.FrameCallback() {
+								@Override
+								public void doFrame(long frameTimeNanos) {
+									flushResults();
+								}
+							};
+						}
+						Choreographer.getInstance().postFrameCallback(frameCallback);
+					}
+				};
+			}
+			uiHandler.post(frameCallbackRunnable);
+		}
+		else {
+			uiHandler.postDelayed(resultFlushRunnable, Math.max(resultBatchingWindow, 0));
+		}
+	}
+
+	/**
+	 * Schedule the queued results to be sent to the WebView as soon as the UI thread is free, because some have been set aside
+	 * after reaching the result chunk size. Must be called while holding resultQueueLock.
+	 */
+	private void scheduleFullQueueFlush() {
+		if (fullQueueFlushRunnable == null) {
+			fullQueueFlushRunnable = new Runnable() {
+				public void run() {
+					flushResults();
+				}
+			};
+		}
+		uiHandler.post(fullQueueFlushRunnable);
+	}
+
+	/**
+	 * Schedule the queued results to be sent to the WebView as soon as possible, because a high priority result is waiting. The flush
+	 * jumps the UI thread's queue at most once per frame, so that a stream of high priority results cannot starve other work.
+	 * Must be called while holding resultQueueLock.
+	 */
+	private void scheduleUrgentResultFlush() {
+		if (urgentFlushRunnable == null) {
+			urgentFlushRunnable = new Runnable() {
+				public void run() {
+					flushResults();
+				}
+			};
+		}
+
+		long now = SystemClock.uptimeMillis();
+		if (now - lastUrgentFlushMillis >= URGENT_FLUSH_INTERVAL) {
+			lastUrgentFlushMillis = now;
+			uiHandler.postAtFrontOfQueue(urgentFlushRunnable);
+		}
+		else {
+			uiHandler.post(urgentFlushRunnable);
+		}
+	}
+
+	/**
+	 * Send all queued results to the WebView. Results which were set aside when the queue filled up are sent first, each in a script
+	 * or message of its own, followed by the rest in a single script or message. Must be called on the UI thread.
+	 */
+	private void flushResults() {
+		WebMessageTransport transport = getReadyMessageTransport();
+		boolean isLastBatch = false;
+		while (!isLastBatch) {
+			synchronized (resultQueueLock) {
+				String fullBatch = fullResultBatches.poll();
+				if (fullBatch == null) {
+					isLastBatch = true;
+					isResultFlushScheduled = false;
+					isFullQueueFlushScheduled = false;
+					isUrgentFlushScheduled = false;
+					if (resultQueue.length() == 0) {
+						return;
+					}
+				}
+				// copy the queue straight into the script or message, so that the string passed to the WebView is the only allocation
+				flushBuilder.setLength(0);
+				flushBuilder.append(transport != null ? BATCH_MESSAGE_PREFIX : BATCH_SCRIPT_PREFIX)
+						.append(fullBatch != null ? fullBatch : resultQueue)
+						.append(transport != null ? BATCH_MESSAGE_SUFFIX : BATCH_SCRIPT_SUFFIX);
+				if (fullBatch == null) {
+					resultQueue.setLength(0);
+				}
+			}
+			sendResults(flushBuilder.toString(), transport);
+		}
+	}
+
+	/**
+	 * Send a batch of results to the WebView. Must be called on the UI thread.
+	 * @param results the script or message which holds the results.
+	 * @param transport the transport to send the message on, or null to evaluate the script.
+	 */
+	private void sendResults(String results, WebMessageTransport transport) {
+		Tracer tracer = getEnabledTracer();
+		if (tracer != null) {
+			tracer.beginSection(TRACE_FLUSH_RESULTS);
+		}
+		try {
+			if (transport != null) {
+				transport.post(results);
+			}
+			else {
+				evaluateJavaScript(results, null);
+			}
+		}
+		finally {
+			if (tracer != null) {
+				tracer.endSection();
+			}
+		}
 	}
 }
@@ -0,0 +1,188 @@
+package uk.co.tealspoon.savannah;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import org.json.JSONObject;
+
+import android.app.Activity;
+import android.support.annotation.NonNull;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+/**
+ * A pool of prewarmed {@link android.webkit.WebView WebViews} from which {@link uk.co.tealspoon.savannah.WebViewManager WebViewManagers}
+ * can be created without waiting for a WebView to be created and its engine started.
+ * <p>
+ * Each idle WebView in the pool has loaded a warm-up page, which should be a blank page that includes savannah.js, so that the
+ * web engine and savannah.js are ready before the WebView is needed. A WebViewManager obtained from the pool is a new manager with
+ * its own name, plugins and settings, which loads its URL into a prewarmed WebView. When the manager is no longer needed, recycle it;
+ * its WebView is detached from it and warmed up again, and its history is cleared once the next manager's first page has loaded.
+ * <p>
+ * WebViews share cookies, web storage and the HTTP cache whether or not they are pooled, so pages in recycled WebViews are isolated
+ * from each other only as much as pages in different WebViews are.
+ * <p>
+ * All methods must be called on the UI thread.
+ */
+public class WebViewManagerPool {
+
+	/**
+	 * A factory for the WebViews in a pool.
+	 */
+	public interface WebViewFactory {
+
+		/**
+		 * Creates a new WebView, with JavaScript enabled and any other settings which the pages loaded into it need.
+		 * @return the new WebView.
+		 */
+		public WebView createWebView();
+	}
+
+	// clears the history of a warmed up WebView, so that the previous manager's pages are forgotten
+	private static final WebViewClient warmingClient = new WebViewClient() {
+		@Override
+		public void onPageFinished(WebView view, String url) {
+			view.clearHistory();
+		}
+	};
+
+	private final URL warmUrl;
+	private final int maxIdleCount;
+	private final WebViewFactory webViewFactory;
+	private final ArrayList<WebView> idleWebViews;
+
+	/**
+	 * Creates a new pool which creates WebViews with JavaScript enabled for the given Activity.
+	 * @param activity the Activity which will contain the WebViews.
+	 * @param warmUrl the URL of the page to warm up idle WebViews with.
+	 * @param maxIdleCount the maximum number of idle WebViews to keep.
+	 */
+	public WebViewManagerPool(@NonNull final Activity activity, @NonNull URL warmUrl, int maxIdleCount) {
+		this(warmUrl, maxIdleCount, new WebViewFactory() {
+			public WebView createWebView() {
+				WebView webView = new WebView(activity);
+				webView.getSettings().setJavaScriptEnabled(true);
+				return webView;
+			}
+		});
+	}
+
+	/**
+	 * Creates a new pool which creates WebViews with the given factory.
+	 * @param warmUrl the URL of the page to warm up idle WebViews with.
+	 * @param maxIdleCount the maximum number of idle WebViews to keep.
+	 * @param webViewFactory the factory to create WebViews with.
+	 */
+	public WebViewManagerPool(@NonNull URL warmUrl, int maxIdleCount, @NonNull WebViewFactory webViewFactory) {
+		if (warmUrl == null) {
+			throw new IllegalArgumentException("Warm-up URL should not be null");
+		}
+		if (maxIdleCount < 0) {
+			throw new IllegalArgumentException("Maximum idle count should not be negative");
+		}
+		if (webViewFactory == null) {
+			throw new IllegalArgumentException("WebView factory should not be null");
+		}
+
+		this.warmUrl = warmUrl;
+		this.maxIdleCount = maxIdleCount;
+		this.webViewFactory = webViewFactory;
+		this.idleWebViews = new ArrayList<WebView>(maxIdleCount);
+	}
+
+	/**
+	 * Creates and warms up WebViews until the pool has its maximum number of idle WebViews. Call this when the app has time to
+	 * spare, such as after its first screen has been drawn.
+	 */
+	public void prewarm() {
+		while (idleWebViews.size() < maxIdleCount) {
+			idleWebViews.add(warm(webViewFactory.createWebView()));
+		}
+	}
+
+	/**
+	 * Creates a new WebViewManager using an idle WebView from the pool, or a new WebView if the pool is empty.
+	 * @param name the name of the WebViewManager. Useful for identifying WebViewManagers. Uniqueness is not enforced.
+	 * @param activity the Activity that contains the WebView.
+	 * @param settings the settings to pass to the WebView.
+	 * @param pluginsCollection a collection of Plugins to be made available to the WebView.
+	 * @param url the URL to load into the WebView.
+	 * @return the new WebViewManager. Add its WebView, from {@link WebViewManager#getWebView()}, to the Activity's layout.
+	 */
+	public WebViewManager obtain(@NonNull String name, @NonNull Activity activity, @NonNull JSONObject settings,
+								 @NonNull Collection<Plugin> pluginsCollection, @NonNull URL url) {
+		if (idleWebViews.isEmpty()) {
+			return new WebViewManager(name, webViewFactory.createWebView(), activity, settings, pluginsCollection, url);
+		}
+		return new WebViewManager(name, idleWebViews.remove(idleWebViews.size() - 1), activity, settings, pluginsCollection, url,
+				warmUrl);
+	}
+
+	/**
+	 * Creates a new WebViewManager using an idle WebView from the pool, or a new WebView if the pool is empty.
+	 * @param name the name of the WebViewManager. Useful for identifying WebViewManagers. Uniqueness is not enforced.
+	 * @param activity the Activity that contains the WebView.
+	 * @param configProvider the provider to use for retrieving Savannah configuration for pages loaded by the WebView.
+	 * @param url the URL to load into the WebView.
+	 * @return the new WebViewManager. Add its WebView, from {@link WebViewManager#getWebView()}, to the Activity's layout.
+	 */
+	public WebViewManager obtain(@NonNull String name, @NonNull Activity activity, @NonNull ConfigProvider configProvider,
+								 @NonNull URL url) {
+		if (idleWebViews.isEmpty()) {
+			return new WebViewManager(name, webViewFactory.createWebView(), activity, configProvider, url);
+		}
+		return new WebViewManager(name, idleWebViews.remove(idleWebViews.size() - 1), activity, configProvider, url,
+				warmUrl);
+	}
+
+	/**
+	 * Returns a WebViewManager's WebView to the pool. The manager is detached from its WebView and must not be used again; results
+	 * of commands from its page are dropped. If the pool already has its maximum number of idle WebViews, the WebView is destroyed.
+	 * The WebView must have been removed from the Activity's layout.
+	 * @param manager the manager which is no longer needed.
+	 */
+	public void recycle(@NonNull WebViewManager manager) {
+		WebView webView = manager.detach();
+		if (webView == null) {
+			return;
+		}
+
+		if (idleWebViews.size() < maxIdleCount) {
+			idleWebViews.add(warm(webView));
+		}
+		else {
+			webView.destroy();
+		}
+	}
+
+	/**
+	 * Destroys all of the idle WebViews in the pool.
+	 */
+	public void clear() {
+		for (WebView webView : idleWebViews) {
+			webView.destroy();
+		}
+		idleWebViews.clear();
+	}
+
+	/**
+	 * Returns the number of idle WebViews in the pool.
+	 * @return the number of idle WebViews.
+	 */
+	public int getIdleCount() {
+		return idleWebViews.size();
+	}
+
+	/**
+	 * Loads the warm-up page into the given WebView.
+	 * @param webView the WebView to warm up.
+	 * @return the WebView.
+	 */
+	private WebView warm(WebView webView) {
+		webView.setWebViewClient(warmingClient);
+		webView.loadUrl(warmUrl.toString());
+		return webView;
+	}
+
+}
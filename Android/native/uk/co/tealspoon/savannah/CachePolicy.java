@@ -0,0 +1,75 @@
+package uk.co.tealspoon.savannah;
+
+/**
+ * How the successful results of a method of a {@link uk.co.tealspoon.savannah.CacheablePlugin CacheablePlugin} are cached: for how
+ * long, how large a result may be cached, and whether savannah.js may also cache them.
+ */
+public final class CachePolicy {
+
+	/**
+	 * Time to live of results which are cached until they are invalidated or evicted.
+	 */
+	public static final long NO_EXPIRY = Long.MAX_VALUE;
+
+	/**
+	 * The default maximum length, in characters of the serialized result, of a result which is cached.
+	 */
+	public static final int DEFAULT_MAX_RESULT_LENGTH = 16 * 1024;
+
+	private final long timeToLiveMillis;
+	private final int maxResultLength;
+	private final boolean isMirrored;
+
+	/**
+	 * Creates a policy which caches results up to {@link #DEFAULT_MAX_RESULT_LENGTH} characters natively.
+	 * @param timeToLiveMillis how long a result is cached for, or {@link #NO_EXPIRY}.
+	 */
+	public CachePolicy(long timeToLiveMillis) {
+		this(timeToLiveMillis, DEFAULT_MAX_RESULT_LENGTH, false);
+	}
+
+	/**
+	 * Creates a policy.
+	 * @param timeToLiveMillis how long a result is cached for, or {@link #NO_EXPIRY}.
+	 * @param maxResultLength the maximum length, in characters of the serialized result, of a result which is cached.
+	 * @param isMirrored true if savannah.js may also cache results, so that calls which hit its cache never reach the native app.
+	 * Results cached by savannah.js are dropped when they are invalidated natively, but results are not cached natively and in
+	 * savannah.js at the same moment, so a call made while an invalidation is on its way to the page may still hit.
+	 */
+	public CachePolicy(long timeToLiveMillis, int maxResultLength, boolean isMirrored) {
+		if (timeToLiveMillis <= 0) {
+			throw new IllegalArgumentException("Time to live should be positive");
+		}
+		if (maxResultLength < 0) {
+			throw new IllegalArgumentException("Maximum result length should not be negative");
+		}
+		this.timeToLiveMillis = timeToLiveMillis;
+		this.maxResultLength = maxResultLength;
+		this.isMirrored = isMirrored;
+	}
+
+	/**
+	 * Returns how long a result is cached for.
+	 * @return the time to live in milliseconds, or {@link #NO_EXPIRY}.
+	 */
+	public long getTimeToLiveMillis() {
+		return timeToLiveMillis;
+	}
+
+	/**
+	 * Returns the maximum length of a result which is cached.
+	 * @return the maximum length in characters of the serialized result.
+	 */
+	public int getMaxResultLength() {
+		return maxResultLength;
+	}
+
+	/**
+	 * Returns true if savannah.js may also cache results.
+	 * @return true if results are mirrored in savannah.js.
+	 */
+	public boolean isMirrored() {
+		return isMirrored;
+	}
+
+}
@@ -0,0 +1,21 @@
+package uk.co.tealspoon.savannah;
+
+import java.net.URL;
+
+/**
+ * A CacheableConfigProvider is a {@link uk.co.tealspoon.savannah.ConfigProvider ConfigProvider} which declares which URLs share the same
+ * configuration. A {@link uk.co.tealspoon.savannah.WebViewManager WebViewManager} asks the provider for the configuration of the first
+ * page it loads with each cache key, and reuses it for later pages with the same key until the cache is invalidated with
+ * {@link uk.co.tealspoon.savannah.WebViewManager#invalidateConfig()}.
+ * <p>
+ * ConfigProviders which do not implement this interface are asked for the configuration every time a page loads.
+ */
+public interface CacheableConfigProvider extends ConfigProvider {
+
+	/**
+	 * Returns the key under which to cache the configuration for the given URL. URLs with equal keys must have the same configuration.
+	 * @param url the URL of the page that has loaded.
+	 * @return the cache key, or null if the configuration for the URL should not be cached.
+	 */
+	public String configCacheKeyForUrl(URL url);
+}
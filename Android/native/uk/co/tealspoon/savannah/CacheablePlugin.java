@@ -0,0 +1,19 @@
+package uk.co.tealspoon.savannah;
+
+/**
+ * A CacheablePlugin is a {@link uk.co.tealspoon.savannah.Plugin Plugin} with methods whose results depend only on their arguments for
+ * a while, such as device information, feature flags or localized strings. The {@link uk.co.tealspoon.savannah.WebViewManager
+ * WebViewManager} caches the final successful result of each call to such a method by its arguments, and answers later calls with the
+ * same arguments from its cache without calling {@link #execute execute}. Error and progress results are never cached.
+ * <p>
+ * When results change, invalidate them with {@link uk.co.tealspoon.savannah.WebViewManager#invalidateCachedResults(String, String)}.
+ */
+public interface CacheablePlugin extends Plugin {
+
+	/**
+	 * Returns how the results of the given method are cached. The policy of a method must not change while the Plugin is in use.
+	 * @param action the name of a method of this Plugin.
+	 * @return the policy, or null if the method's results should not be cached.
+	 */
+	public CachePolicy getCachePolicy(String action);
+}
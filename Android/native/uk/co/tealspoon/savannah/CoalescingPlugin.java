@@ -0,0 +1,20 @@
+package uk.co.tealspoon.savannah;
+
+/**
+ * A CoalescingPlugin is a {@link uk.co.tealspoon.savannah.Plugin Plugin} with methods for which identical calls in flight at the same
+ * time can share one execution, such as fetching the location or an access token. While a call to such a method has not yet sent any
+ * result, further calls with the same arguments are not executed; they attach to the first call, and every result the first call sends,
+ * including progress and errors, is sent to all of them.
+ * <p>
+ * Calls with binary arguments or timeouts are never coalesced, and calls are only coalesced with calls of the same
+ * {@link uk.co.tealspoon.savannah.CommandPriority priority}.
+ */
+public interface CoalescingPlugin extends Plugin {
+
+	/**
+	 * Returns true if identical calls to the given method may share one execution.
+	 * @param action the name of a method of this Plugin.
+	 * @return true if calls to the method are coalesced.
+	 */
+	public boolean isCoalescing(String action);
+}
@@ -1,10 +1,13 @@
 package uk.co.tealspoon.savannah;
 
+import java.nio.ByteBuffer;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import android.app.Activity;
+import android.os.SystemClock;
 import android.util.Log;
 
 /**
@@ -14,10 +17,39 @@ import android.util.Log;
  */
 public class Command {
 
-	private final JSONArray arguments;
-	private final String callbackId;
+	/**
+	 * The key of the placeholder objects which stand in for binary arguments.
+	 */
+	static final String BINARY_KEY = "$svnhBinary";
+	// the error sent to the page when a Command's deadline passes before its final result is sent
+	static final String TIMEOUT_ERROR = "Timeout";
+	static final long NO_DEADLINE = Long.MAX_VALUE;
+
+	// not final, so that a pooled Command can be reinitialized for a new call
+	private String argumentsJSON;
+	private String binary;
+	private volatile JSONArray arguments;
+	private int callbackId;
+	private int generation;
 	private final WebViewManager webViewManager;
 	private boolean isDiscarded;
+	private volatile boolean isCancelled;
+	private CancelListener cancelListener;
+	// the pool that this Command returns to after its final result, or null if it is not pooled
+	private CommandPool pool;
+	// while the Plugin is executing this Command, it is not returned to its pool, so that it isn't reused before execution finishes
+	private boolean isExecuting;
+	private boolean isReleaseDeferred;
+	// set before the Command is dispatched, and null if metrics are disabled
+	private PluginMetrics.MethodRecorder metricsRecorder;
+	private long receivedNanos;
+	// set before the Command is dispatched, and null if tracing is disabled
+	private String traceName;
+	private ResultCache.Key resultCacheKey;
+	private CommandCoalescer.Group coalescingGroup;
+	private int priority = CommandPriority.NORMAL;
+	// the SystemClock.uptimeMillis() time by which the final result must be sent
+	private volatile long deadline = NO_DEADLINE;
 	public final String webViewManagerName;
 	public final Activity activity;
 
@@ -25,27 +57,262 @@ public class Command {
 	 * Create a new Command
 	 * @param arguments the arguments passed to the plugin by the WebView.
 	 * @param callbackId the value used to identify the callbacks for this Command in the WebView.
+	 * @param generation the generation of the page which sent this Command.
 	 * @param webViewManager the manager for this Command.
 	 * @param activity the Activity which contains the given WebView.
 	 */
-	protected Command(JSONArray arguments, String callbackId, WebViewManager webViewManager, Activity activity) {
+	protected Command(JSONArray arguments, int callbackId, int generation, WebViewManager webViewManager, Activity activity) {
+		this(null, arguments, null, callbackId, generation, webViewManager, activity);
+	}
+
+	/**
+	 * Create a new Command whose arguments are parsed the first time they are accessed.
+	 * @param argumentsJSON the JSON array of arguments passed to the plugin by the WebView.
+	 * @param binary the binary arguments referred to by argumentsJSON, as a string with one character per byte, or null if there are none.
+	 * @param callbackId the value used to identify the callbacks for this Command in the WebView.
+	 * @param generation the generation of the page which sent this Command.
+	 * @param webViewManager the manager for this Command.
+	 * @param activity the Activity which contains the given WebView.
+	 */
+	protected Command(String argumentsJSON, String binary, int callbackId, int generation, WebViewManager webViewManager, Activity activity) {
+		this(argumentsJSON, null, binary, callbackId, generation, webViewManager, activity);
+	}
+
+	private Command(String argumentsJSON, JSONArray arguments, String binary, int callbackId, int generation,
+					WebViewManager webViewManager, Activity activity) {
+		this.argumentsJSON = argumentsJSON;
 		this.arguments = arguments;
+		this.binary = binary;
 		this.callbackId = callbackId;
+		this.generation = generation;
 		this.webViewManager = webViewManager;
 		this.activity = activity;
 		webViewManagerName = webViewManager.getName();
 		isDiscarded = false;
 	}
 
+	/**
+	 * Returns the WebViewManager which received this Command, for example to publish events with
+	 * {@link WebViewManager#publishEvent(String, Object)}.
+	 * @return the WebViewManager.
+	 */
+	public WebViewManager getWebViewManager() {
+		return webViewManager;
+	}
+
+	/**
+	 * Sets the pool that this Command is returned to once it has sent its final result.
+	 * @param pool the pool.
+	 */
+	void setPool(CommandPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Reinitializes a Command taken from a pool for a new call.
+	 * @param argumentsJSON the JSON array of arguments passed to the plugin by the WebView.
+	 * @param binary the binary arguments referred to by argumentsJSON, or null if there are none.
+	 * @param callbackId the value used to identify the callbacks for this Command in the WebView.
+	 * @param generation the generation of the page which sent this Command.
+	 */
+	synchronized void reinitialize(String argumentsJSON, String binary, int callbackId, int generation) {
+		this.argumentsJSON = argumentsJSON;
+		this.arguments = null;
+		this.binary = binary;
+		this.callbackId = callbackId;
+		this.generation = generation;
+		this.metricsRecorder = null;
+		this.receivedNanos = 0;
+		this.traceName = null;
+		this.resultCacheKey = null;
+		this.coalescingGroup = null;
+		this.priority = CommandPriority.NORMAL;
+		this.deadline = NO_DEADLINE;
+		isDiscarded = false;
+		isCancelled = false;
+		cancelListener = null;
+		isExecuting = false;
+		isReleaseDeferred = false;
+	}
+
+	/**
+	 * Returns the arguments of this Command, parsing them if they have not yet been parsed.
+	 * @return the arguments of this Command.
+	 */
+	private JSONArray arguments() {
+		JSONArray arguments = this.arguments;
+		if (arguments == null) {
+			// parsing twice on a race is harmless, so there's no need to lock
+			if (argumentsJSON.equals("null")) {
+				arguments = new JSONArray();
+			}
+			else {
+				try {
+					arguments = new JSONArray(argumentsJSON);
+				}
+				catch (JSONException e) {
+					Log.e("Savannah", "Malformed JSON in arguments. JSON: " + argumentsJSON);
+					arguments = new JSONArray();
+				}
+			}
+			this.arguments = arguments;
+		}
+		return arguments;
+	}
+
+	/**
+	 * Returns the value used to identify the callbacks for this Command in the WebView.
+	 * @return the callback ID of this Command.
+	 */
+	int getCallbackId() {
+		return callbackId;
+	}
+
+	/**
+	 * Returns the generation of the page which sent this Command.
+	 * @return the generation of the page which sent this Command.
+	 */
+	int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Sets the recorder for this Command's metrics. Must be called before the Command is dispatched.
+	 * @param recorder the recorder for the Plugin method that this Command calls.
+	 * @param receivedNanos the time at which this Command was received.
+	 */
+	void setMetricsRecorder(PluginMetrics.MethodRecorder recorder, long receivedNanos) {
+		this.metricsRecorder = recorder;
+		this.receivedNanos = receivedNanos;
+	}
+
+	/**
+	 * Returns the recorder for this Command's metrics.
+	 * @return the recorder, or null if metrics were disabled when this Command was received.
+	 */
+	PluginMetrics.MethodRecorder getMetricsRecorder() {
+		return metricsRecorder;
+	}
+
+	/**
+	 * Sets the name of this Command's trace sections. Must be called before the Command is dispatched.
+	 * @param traceName the name of the trace sections.
+	 */
+	void setTraceName(String traceName) {
+		this.traceName = traceName;
+	}
+
+	/**
+	 * Returns the name of this Command's trace sections.
+	 * @return the name, or null if tracing was disabled when this Command was received.
+	 */
+	String getTraceName() {
+		return traceName;
+	}
+
+	/**
+	 * Sets the priority of this Command. Must be called before the Command is dispatched.
+	 * @param priority the {@link uk.co.tealspoon.savannah.CommandPriority priority}.
+	 */
+	void setPriority(int priority) {
+		this.priority = priority;
+	}
+
+	/**
+	 * Returns the priority of this Command.
+	 * @return the {@link uk.co.tealspoon.savannah.CommandPriority priority}.
+	 */
+	public int getPriority() {
+		return priority;
+	}
+
+	/**
+	 * Sets the deadline of this Command. Must be called before the Command is dispatched.
+	 * @param deadline the SystemClock.uptimeMillis() time by which the final result must be sent, or NO_DEADLINE.
+	 */
+	void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Returns the deadline of this Command.
+	 * @return the SystemClock.uptimeMillis() time by which the final result must be sent, or NO_DEADLINE.
+	 */
+	long getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * Returns true if this Command has a deadline, because the page or the Plugin method set a timeout for the call.
+	 * @return true if this Command has a deadline.
+	 */
+	public boolean hasDeadline() {
+		return deadline != NO_DEADLINE;
+	}
+
+	/**
+	 * Returns the time left before this Command's deadline. A Plugin doing long running work can use this to bound its own waits, such
+	 * as network timeouts. When the deadline passes, the page is sent a "Timeout" error and the Command is cancelled.
+	 * @return the time left in milliseconds, 0 if the deadline has passed, or Long.MAX_VALUE if this Command has no deadline.
+	 */
+	public long remainingTimeMillis() {
+		long deadline = this.deadline;
+		if (deadline == NO_DEADLINE) {
+			return Long.MAX_VALUE;
+		}
+		return Math.max(0, deadline - SystemClock.uptimeMillis());
+	}
+
+	/**
+	 * Sets the key under which this Command's final successful result is cached. Must be called before the Command is dispatched.
+	 * @param resultCacheKey the key.
+	 */
+	void setResultCacheKey(ResultCache.Key resultCacheKey) {
+		this.resultCacheKey = resultCacheKey;
+	}
+
+	/**
+	 * Returns the key under which this Command's final successful result is cached.
+	 * @return the key, or null if the result is not cached.
+	 */
+	ResultCache.Key getResultCacheKey() {
+		return resultCacheKey;
+	}
+
+	/**
+	 * Sets the group of identical calls which this Command leads or follows. Must be called before the Command is dispatched.
+	 * @param coalescingGroup the group.
+	 */
+	void setCoalescingGroup(CommandCoalescer.Group coalescingGroup) {
+		this.coalescingGroup = coalescingGroup;
+	}
+
+	/**
+	 * Returns the group of identical calls which this Command leads or follows.
+	 * @return the group, or null if this Command's call is not coalesced.
+	 */
+	CommandCoalescer.Group getCoalescingGroup() {
+		return coalescingGroup;
+	}
+
+	/**
+	 * Returns the time at which this Command was received, if it is recording metrics.
+	 * @return the time in nanoseconds, as given by System.nanoTime().
+	 */
+	long getReceivedNanos() {
+		return receivedNanos;
+	}
+
 	/**
 	 * Return the length of the arguments array for this Command.
 	 * @return the length of the arguments array for this Command.
 	 */
 	public int argumentsLength() {
-		return arguments.length();
+		return arguments().length();
 	}
 
 	private boolean hasTypeAtIndex(int index, Class aClass) {
+		JSONArray arguments = arguments();
 		if (arguments.length() > index) {
 			try {
 				Object argument = arguments.get(index);
@@ -64,7 +331,7 @@ public class Command {
 	 * @return true if the argument at the given index is a JSON array, false otherwise.
 	 */
 	public boolean hasArrayAtIndex(int index) {
-		return arguments.optJSONArray(index) != null;
+		return arguments().optJSONArray(index) != null;
 	}
 
 	/**
@@ -73,7 +340,7 @@ public class Command {
 	 * @return the argument at the given index if it is a JSON array, null otherwise.
 	 */
 	public JSONArray arrayAtIndex(int index) {
-		return arguments.optJSONArray(index);
+		return arguments().optJSONArray(index);
 	}
 
 	/**
@@ -84,13 +351,74 @@ public class Command {
 	 */
 	public JSONArray arrayAtIndex(int index, JSONArray defaultValue) {
 		if (hasArrayAtIndex(index)) {
-			return arguments.optJSONArray(index);
+			return arguments().optJSONArray(index);
 		}
 		else {
 			return defaultValue;
 		}
 	}
 
+	/**
+	 * Returns the range of the binary argument at the given index as an array of [offset, length], or null if the argument is not binary.
+	 */
+	private JSONArray binaryRangeAtIndex(int index) {
+		if (binary == null) {
+			return null;
+		}
+		JSONObject placeholder = arguments().optJSONObject(index);
+		if (placeholder == null) {
+			return null;
+		}
+		JSONArray range = placeholder.optJSONArray(BINARY_KEY);
+		if (range == null || range.length() != 2) {
+			return null;
+		}
+		int offset = range.optInt(0, -1);
+		int length = range.optInt(1, -1);
+		if (offset < 0 || length < 0 || offset + length > binary.length()) {
+			return null;
+		}
+		return range;
+	}
+
+	/**
+	 * Return true if the argument at the given index is binary: an ArrayBuffer or a typed array in the WebView. If index is beyond the
+	 * end of the array, then this method returns false.
+	 * @param index the index into the arguments array to check.
+	 * @return true if the argument at the given index is binary, false otherwise.
+	 */
+	public boolean hasBytesAtIndex(int index) {
+		return binaryRangeAtIndex(index) != null;
+	}
+
+	/**
+	 * Returns the argument at the given index if it is binary. If the argument at the given index is not binary, then this method returns null.
+	 * @param index the index into the arguments array to check.
+	 * @return the argument at the given index if it is binary, null otherwise.
+	 */
+	public ByteBuffer bytesAtIndex(int index) {
+		return bytesAtIndex(index, null);
+	}
+
+	/**
+	 * Returns the argument at the given index if it is binary. If the argument at the given index is not binary, then this method returns defaultValue.
+	 * @param index the index into the arguments array to check.
+	 * @param defaultValue the value to return if the argument at the given index is not binary.
+	 * @return the argument at the given index if it is binary, defaultValue otherwise.
+	 */
+	@SuppressWarnings("deprecation")
+	public ByteBuffer bytesAtIndex(int index, ByteBuffer defaultValue) {
+		JSONArray range = binaryRangeAtIndex(index);
+		if (range == null) {
+			return defaultValue;
+		}
+		int offset = range.optInt(0);
+		byte[] bytes = new byte[range.optInt(1)];
+		// each character holds one byte, which is exactly what this deprecated method copies
+		binary.getBytes(offset, offset + bytes.length, bytes, 0);
+		return ByteBuffer.wrap(bytes);
+	}
+
 	/**
 	 * Return true if the argument at the given index is a boolean. If index is beyond the end of the array, then this method returns false.
 	 * @param index the index into the arguments array to check.
@@ -106,7 +434,7 @@ public class Command {
 	 * @return the argument at the given index if it is a boolean, false otherwise.
 	 */
 	public boolean booleanAtIndex(int index) {
-		return arguments.optBoolean(index, false);
+		return arguments().optBoolean(index, false);
 	}
 
 	/**
@@ -116,7 +444,7 @@ public class Command {
 	 * @return the argument at the given index if it is a boolean, defaultValue otherwise.
 	 */
 	public boolean booleanAtIndex(int index, boolean defaultValue) {
-		return arguments.optBoolean(index, defaultValue);
+		return arguments().optBoolean(index, defaultValue);
 	}
 
 	/**
@@ -136,7 +464,7 @@ public class Command {
 	 */
 	public double doubleAtIndex(int index) {
 		// doubleAtIndex returns NaN as a fallback by default, so pass 0 instead
-		return arguments.optDouble(index, 0);
+		return arguments().optDouble(index, 0);
 	}
 
 	/**
@@ -146,7 +474,7 @@ public class Command {
 	 * @return the argument at the given index if it is a double, defaultValue otherwise.
 	 */
 	public double doubleAtIndex(int index, double defaultValue) {
-		return arguments.optDouble(index, defaultValue);
+		return arguments().optDouble(index, defaultValue);
 	}
 
 	/**
@@ -164,7 +492,7 @@ public class Command {
 	 * @return the argument at the given index if it is an int, 0 otherwise.
 	 */
 	public int intAtIndex(int index) {
-		return arguments.optInt(index);
+		return arguments().optInt(index);
 	}
 
 	/**
@@ -174,7 +502,7 @@ public class Command {
 	 * @return the argument at the given index if it is an int, 0 otherwise.
 	 */
 	public int intAtIndex(int index, int defaultValue) {
-		return arguments.optInt(index, defaultValue);
+		return arguments().optInt(index, defaultValue);
 	}
 
 	/**
@@ -183,7 +511,7 @@ public class Command {
 	 * @return true if the argument at the given index if it is a JSON object, false otherwise.
 	 */
 	public boolean hasObjectAtIndex(int index) {
-		return arguments.optJSONObject(index) != null;
+		return arguments().optJSONObject(index) != null;
 	}
 
 	/**
@@ -192,7 +520,7 @@ public class Command {
 	 * @return the argument at the given index if it is a JSON object, null otherwise.
 	 */
 	public JSONObject objectAtIndex(int index) {
-		return arguments.optJSONObject(index);
+		return arguments().optJSONObject(index);
 	}
 
 	/**
@@ -203,7 +531,7 @@ public class Command {
 	 */
 	public JSONObject objectAtIndex(int index, JSONObject defaultValue) {
 		if (hasObjectAtIndex(index)) {
-			return arguments.optJSONObject(index);
+			return arguments().optJSONObject(index);
 		}
 		else {
 			return defaultValue;
@@ -225,7 +553,7 @@ public class Command {
 	 * @return the argument at the given index if it is a string, null otherwise.
 	 */
 	public String stringAtIndex(int index) {
-		return arguments.optString(index);
+		return arguments().optString(index);
 	}
 
 	/**
@@ -236,7 +564,7 @@ public class Command {
 	 */
 	public String stringAtIndex(int index, String defaultValue) {
 		if (hasStringAtIndex(index)) {
-			return arguments.optString(index);
+			return arguments().optString(index);
 		}
 		else {
 			return defaultValue;
@@ -251,8 +579,8 @@ public class Command {
 	public boolean hasNullAtIndex(int index) {
 		try {
 			return (index >= 0 &&
-					arguments.length() > index &&
-					arguments.get(index) == null);
+					arguments().length() > index &&
+					arguments().get(index) == null);
 		}
 		catch (JSONException e) {
 			return true;
@@ -262,19 +590,248 @@ public class Command {
 	/**
 	 * Sends the given result to the WebViewManager to pass on to the WebView.
 	 * @param success The result of the Command.
+	 * @param message the result to send, which is serialized by the WebViewManager.
+	 * @param keepCallback true if the callback should be kept rather than discarded.
 	 */
-	private synchronized void sendPluginResult(boolean success, String message, boolean keepCallback) {
-		if (!isDiscarded) {
-			
-			if (!keepCallback) {
-				this.isDiscarded = true;
+	private void sendPluginResult(boolean success, Object message, boolean keepCallback) {
+		sendPluginResult(success, message, keepCallback, false);
+	}
+
+	private synchronized boolean sendPluginResult(boolean success, Object message, boolean keepCallback, boolean isChunk) {
+		if (!claimCallbacks(keepCallback)) {
+			return false;
+		}
+		webViewManager.sendPluginResult(this, success, message, keepCallback, isChunk);
+		recycleIfFinal(keepCallback);
+		return true;
+	}
+
+	// the primitive results are written straight into the result without being boxed
+	private synchronized void sendPluginResult(boolean success, boolean message, boolean keepCallback) {
+		if (claimCallbacks(keepCallback)) {
+			webViewManager.sendPluginResult(this, success, message, keepCallback);
+			recycleIfFinal(keepCallback);
+		}
+	}
+
+	private synchronized void sendPluginResult(boolean success, long message, boolean keepCallback) {
+		if (claimCallbacks(keepCallback)) {
+			webViewManager.sendPluginResult(this, success, message, keepCallback);
+			recycleIfFinal(keepCallback);
+		}
+	}
+
+	private synchronized void sendPluginResult(boolean success, double message, boolean keepCallback) {
+		if (claimCallbacks(keepCallback)) {
+			webViewManager.sendPluginResult(this, success, message, keepCallback);
+			recycleIfFinal(keepCallback);
+		}
+	}
+
+	/**
+	 * Sends a cached result as this Command's final successful result.
+	 * @param result the serialized result.
+	 */
+	synchronized void sendCachedResult(String result) {
+		if (claimCallbacks(false)) {
+			webViewManager.sendCachedResult(this, result);
+			recycleIfFinal(false);
+		}
+	}
+
+	/**
+	 * Sends a result of the Command which this Command's call was coalesced with.
+	 * @param success the status of the result.
+	 * @param result the serialized result, following the callback ID.
+	 * @param keepCallback true if the callback should be kept rather than discarded.
+	 */
+	synchronized void sendCoalescedResult(boolean success, String result, boolean keepCallback) {
+		if (claimCallbacks(keepCallback)) {
+			webViewManager.sendCoalescedResult(this, success, result, keepCallback);
+			recycleIfFinal(keepCallback);
+		}
+	}
+
+	/**
+	 * Returns true if the page has cancelled this Command, or its deadline has passed. The results of a cancelled Command are dropped,
+	 * so a Plugin doing long running work should check this and stop.
+	 * @return true if this Command has been cancelled.
+	 */
+	public boolean isCancelled() {
+		return isCancelled;
+	}
+
+	/**
+	 * Sets the listener which is told when the page cancels this Command. If the Command has already been cancelled, the listener is
+	 * called straight away.
+	 * @param listener the listener, or null to remove it.
+	 */
+	public void setCancelListener(CancelListener listener) {
+		boolean isAlreadyCancelled;
+		synchronized (this) {
+			cancelListener = listener;
+			isAlreadyCancelled = isCancelled;
+		}
+		if (isAlreadyCancelled && listener != null) {
+			listener.onCancel(this);
+		}
+	}
+
+	/**
+	 * Cancels this Command, discarding its callbacks and telling its CancelListener, unless it has already sent its final result.
+	 * @return true if the Command was cancelled.
+	 */
+	boolean cancel() {
+		CancelListener listener;
+		synchronized (this) {
+			if (isDiscarded) {
+				return false;
 			}
-			
-			webViewManager.sendPluginResult(success, message, keepCallback, callbackId);
+			isDiscarded = true;
+			isCancelled = true;
+			listener = cancelListener;
 		}
-		else {
-			Log.e("Savannah", "Response not sent because callbacks have already been discarded.");
+		if (listener != null) {
+			listener.onCancel(this);
+		}
+		return true;
+	}
+
+	/**
+	 * Fails this Command with a timeout error because its deadline has passed, and cancels it, unless it has already sent its final
+	 * result. The Command is not returned to its pool, as its Plugin may still be working on it.
+	 * @return true if the Command timed out.
+	 */
+	boolean expire() {
+		CancelListener listener;
+		synchronized (this) {
+			if (isDiscarded) {
+				return false;
+			}
+			sendTimeoutError();
+			listener = cancelListener;
+		}
+		if (listener != null) {
+			listener.onCancel(this);
+		}
+		return true;
+	}
+
+	/**
+	 * Discards the callbacks and sends the timeout error. Must be called while holding this Command's lock.
+	 */
+	private void sendTimeoutError() {
+		isDiscarded = true;
+		isCancelled = true;
+		webViewManager.sendPluginResult(this, false, TIMEOUT_ERROR, false);
+	}
+
+	/**
+	 * Checks that the callbacks have not been discarded, and discards them if this is the final result. A result sent after the
+	 * deadline is dropped before it is serialized, and the timeout error is sent instead. Must be called while holding this Command's
+	 * lock.
+	 * @param keepCallback true if the callbacks should be kept after this result.
+	 * @return true if the result should be sent.
+	 */
+	private boolean claimCallbacks(boolean keepCallback) {
+		if (isDiscarded) {
+			// the page no longer wants the results of a cancelled Command, so dropping them is expected
+			if (!isCancelled) {
+				Log.e("Savannah", "Response not sent because callbacks have already been discarded.");
+			}
+			return false;
+		}
+		if (deadline != NO_DEADLINE && SystemClock.uptimeMillis() >= deadline) {
+			sendTimeoutError();
+			return false;
+		}
+		if (!keepCallback) {
+			isDiscarded = true;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns this Command to its pool, if it has one, after its final result has been sent.
+	 * @param keepCallback true if the callbacks were kept after the result.
+	 */
+	private void recycleIfFinal(boolean keepCallback) {
+		if (!keepCallback && pool != null) {
+			if (isExecuting) {
+				isReleaseDeferred = true;
+			}
+			else {
+				pool.release(this);
+			}
+		}
+	}
+
+	/**
+	 * Marks this Command as being executed by its Plugin. Until {@link #endExecution()} is called, a final result does not return
+	 * the Command to its pool.
+	 */
+	void beginExecution() {
+		if (pool != null) {
+			synchronized (this) {
+				isExecuting = true;
+			}
+		}
+	}
+
+	/**
+	 * Marks the end of this Command's execution by its Plugin, and returns it to its pool if it sent its final result meanwhile. The
+	 * Command must not be used by the caller afterwards.
+	 */
+	void endExecution() {
+		if (pool == null) {
+			return;
+		}
+		boolean isReleasable;
+		synchronized (this) {
+			isExecuting = false;
+			isReleasable = isReleaseDeferred;
+			isReleaseDeferred = false;
+		}
+		if (isReleasable) {
+			pool.release(this);
+		}
+	}
+
+	/**
+	 * Sends a chunk of a streamed result to the WebViewManager.
+	 * @param chunk the text of the chunk.
+	 * @param isFinal true if this is the last chunk of the result.
+	 * @param isIncremental true if the chunk should be sent to the progress handlers.
+	 * @return true if the chunk was sent, false if the callbacks for this Command have already been discarded.
+	 */
+	synchronized boolean sendResultChunk(String chunk, boolean isFinal, boolean isIncremental) {
+		if (!isIncremental) {
+			return sendPluginResult(true, chunk, !isFinal, true);
+		}
+		if (chunk.length() > 0 && !sendPluginResult(false, chunk, true, false)) {
+			return false;
 		}
+		return !isFinal || sendPluginResult(true, null, false, false);
+	}
+
+	/**
+	 * Opens a stream to which the JSON representation of this Command's result can be written. The result is sent to the WebView in
+	 * chunks and calls the success callback and handlers in the WebView when the stream is closed.
+	 * @return a new ResultStream.
+	 */
+	public ResultStream openResultStream() {
+		return openResultStream(false);
+	}
+
+	/**
+	 * Opens a stream to which this Command's result can be written. The result is sent to the WebView in chunks.
+	 * @param isIncremental false if the text written to the stream is the JSON representation of the result, which calls the success
+	 * callback and handlers in the WebView when the stream is closed. true if each chunk should instead be passed to the progress handlers
+	 * in the WebView as a string, followed by the success callback and handlers with no result when the stream is closed.
+	 * @return a new ResultStream.
+	 */
+	public ResultStream openResultStream(boolean isIncremental) {
+		return new ResultStream(this, isIncremental, webViewManager.getResultChunkSize());
 	}
 	
 	/**
@@ -289,7 +846,7 @@ public class Command {
 	 * @param message the result of the Command, to send to the WebView.
 	 */
 	public void success(JSONArray message) {
-		sendPluginResult(true, messageAsString(message), false);
+		sendPluginResult(true, message, false);
 	}
 	
 	/**
@@ -297,7 +854,7 @@ public class Command {
 	 * @param message the result of the Command, to send to the WebView.
 	 */
 	public void success(boolean message) {
-		sendPluginResult(true, messageAsString(message), false);
+		sendPluginResult(true, message, false);
 	}
 	
 	/**
@@ -305,7 +862,7 @@ public class Command {
 	 * @param message the result of the Command, to send to the WebView.
 	 */
 	public void success(double message) {
-		sendPluginResult(true, messageAsString(message), false);
+		sendPluginResult(true, message, false);
 	}
 	
 	/**
@@ -313,7 +870,7 @@ public class Command {
 	 * @param message the result of the Command, to send to the WebView.
 	 */
 	public void success(int message) {
-		sendPluginResult(true, messageAsString(message), false);
+		sendPluginResult(true, message, false);
 	}
 
 	/**
@@ -321,7 +878,7 @@ public class Command {
 	 * @param message the result of the Command, to send to the WebView.
 	 */
 	public void success(JSONObject message) {
-		sendPluginResult(true, messageAsString(message), false);
+		sendPluginResult(true, message, false);
 	}
 	
 	/**
@@ -329,7 +886,23 @@ public class Command {
 	 * @param message the result of the Command, to send to the WebView.
 	 */
 	public void success(String message) {
-		sendPluginResult(true, messageAsString(message), false);
+		sendPluginResult(true, message, false);
+	}
+
+	/**
+	 * Calls the success callback and handlers in the WebView for this command (if any), passing back binary data. The data between the buffer's position and limit is sent, and is received as a Uint8Array.
+	 * @param message the result of the Command, to send to the WebView.
+	 */
+	public void success(ByteBuffer message) {
+		sendPluginResult(true, message, false);
+	}
+	
+	/**
+	 * Calls the success callback and handlers in the WebView for this command (if any), passing back binary data, which is received as a Uint8Array.
+	 * @param message the result of the Command, to send to the WebView.
+	 */
+	public void success(byte[] message) {
+		sendPluginResult(true, message, false);
 	}
 	
 	/**
@@ -344,7 +917,7 @@ public class Command {
 	 * @param message the result of the Command, to send to the WebView.
 	 */
 	public void error(JSONArray message) {
-		sendPluginResult(false, messageAsString(message), false);
+		sendPluginResult(false, message, false);
 	}
 	
 	/**
@@ -352,7 +925,7 @@ public class Command {
 	 * @param message the result of the Command, to send to the WebView.
 	 */
 	public void error(boolean message) {
-		sendPluginResult(false, messageAsString(message), false);
+		sendPluginResult(false, message, false);
 	}
 	
 	/**
@@ -360,7 +933,7 @@ public class Command {
 	 * @param message the result of the Command, to send to the WebView.
 	 */
 	public void error(double message) {
-		sendPluginResult(false, messageAsString(message), false);
+		sendPluginResult(false, message, false);
 	}
 	
 	/**
@@ -368,7 +941,7 @@ public class Command {
 	 * @param message the result of the Command, to send to the WebView.
 	 */
 	public void error(int message) {
-		sendPluginResult(false, messageAsString(message), false);
+		sendPluginResult(false, message, false);
 	}
 	
 	/**
@@ -376,7 +949,7 @@ public class Command {
 	 * @param message the result of the Command, to send to the WebView.
 	 */
 	public void error(JSONObject message) {
-		sendPluginResult(false, messageAsString(message), false);
+		sendPluginResult(false, message, false);
 	}
 	
 	/**
@@ -384,7 +957,23 @@ public class Command {
 	 * @param message the result of the Command, to send to the WebView.
 	 */
 	public void error(String message) {
-		sendPluginResult(false, messageAsString(message), false);
+		sendPluginResult(false, message, false);
+	}
+
+	/**
+	 * Calls the error callback and handlers in the WebView for this command (if any), passing back binary data. The data between the buffer's position and limit is sent, and is received as a Uint8Array.
+	 * @param message the result of the Command, to send to the WebView.
+	 */
+	public void error(ByteBuffer message) {
+		sendPluginResult(false, message, false);
+	}
+	
+	/**
+	 * Calls the error callback and handlers in the WebView for this command (if any), passing back binary data, which is received as a Uint8Array.
+	 * @param message the result of the Command, to send to the WebView.
+	 */
+	public void error(byte[] message) {
+		sendPluginResult(false, message, false);
 	}
 	
 	/**
@@ -399,7 +988,7 @@ public class Command {
 	 * @param message the result of the Command, to send to the WebView.
 	 */
 	public void progress(JSONArray message) {
-		sendPluginResult(false, messageAsString(message), true);
+		sendPluginResult(false, message, true);
 	}
 	
 	/**
@@ -407,7 +996,7 @@ public class Command {
 	 * @param message the result of the Command, to send to the WebView.
 	 */
 	public void progress(boolean message) {
-		sendPluginResult(false, messageAsString(message), true);
+		sendPluginResult(false, message, true);
 	}
 	
 	/**
@@ -415,7 +1004,7 @@ public class Command {
 	 * @param message the result of the Command, to send to the WebView.
 	 */
 	public void progress(double message) {
-		sendPluginResult(false, messageAsString(message), true);
+		sendPluginResult(false, message, true);
 	}
 	
 	/**
@@ -423,7 +1012,7 @@ public class Command {
 	 * @param message the result of the Command, to send to the WebView.
 	 */
 	public void progress(int message) {
-		sendPluginResult(false, messageAsString(message), true);
+		sendPluginResult(false, message, true);
 	}
 	
 	/**
@@ -431,7 +1020,7 @@ public class Command {
 	 * @param message the result of the Command, to send to the WebView.
 	 */
 	public void progress(JSONObject message) {
-		sendPluginResult(false, messageAsString(message), true);
+		sendPluginResult(false, message, true);
 	}
 	
 	/**
@@ -439,30 +1028,22 @@ public class Command {
 	 * @param message the result of the Command, to send to the WebView.
 	 */
 	public void progress(String message) {
-		sendPluginResult(false, messageAsString(message), true);
+		sendPluginResult(false, message, true);
 	}
-	
-	private String messageAsString(boolean message) {
-		return Boolean.toString(message);
-	}
-	
-	private String messageAsString(int message) {
-		return Integer.toString(message);
-	}
-	
-	private String messageAsString(double message) {
-		return Double.toString(message);
-	}
-	
-	private String messageAsString(JSONObject message) {
-		return message.toString().replace("'", "\\'");
-	}
-	
-	private String messageAsString(JSONArray message) {
-		return message.toString().replace("'", "\\'");
+
+	/**
+	 * Calls the success callback and progress handlers in the WebView for this command (if any), passing back binary data. The data between the buffer's position and limit is sent, and is received as a Uint8Array.
+	 * @param message the result of the Command, to send to the WebView.
+	 */
+	public void progress(ByteBuffer message) {
+		sendPluginResult(false, message, true);
 	}
 	
-	private String messageAsString(String message) {
-		return "'" + message.replace("'", "\\'") + "'";
+	/**
+	 * Calls the success callback and progress handlers in the WebView for this command (if any), passing back binary data, which is received as a Uint8Array.
+	 * @param message the result of the Command, to send to the WebView.
+	 */
+	public void progress(byte[] message) {
+		sendPluginResult(false, message, true);
 	}
 }
@@ -0,0 +1,347 @@
+package uk.co.tealspoon.savannah;
+
+import org.json.JSONException;
+
+/**
+ * Decodes a batch of commands sent by savannah.js in a single pass. A batch is a JSON array of commands, each of which is an array of
+ * the form [callbackId, pluginName, methodName, arguments], optionally followed by the command's priority, or null if the page set
+ * none, and then by the command's timeout in milliseconds. The callback ID, plugin name, method name, priority and timeout of each
+ * command are decoded directly; the arguments are not parsed at all, only delimited, so that each Command can parse its own arguments
+ * if and when they are needed.
+ */
+final class CommandBatchDecoder {
+
+	private final String batch;
+	private final int length;
+	private int position;
+	private boolean isStarted;
+	private boolean isFinished;
+
+	private int callbackId;
+	private String pluginName;
+	private String methodName;
+	private String arguments;
+	private int priority;
+	private int timeoutMillis;
+
+	/**
+	 * Creates a new decoder for the given batch.
+	 * @param batch a JSON array of commands.
+	 */
+	CommandBatchDecoder(String batch) {
+		this.batch = batch;
+		this.length = batch.length();
+	}
+
+	/**
+	 * Advances to the next command in the batch. Entries in the batch which are not arrays are skipped.
+	 * @return true if there is another command, false if the end of the batch has been reached.
+	 * @throws JSONException if the batch is malformed.
+	 */
+	boolean next() throws JSONException {
+		while (advance()) {
+			if (peek() == '[') {
+				readCommand();
+				return true;
+			}
+			skipValue();
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the callback ID of the current command.
+	 * @return the callback ID of the current command.
+	 */
+	int getCallbackId() {
+		return callbackId;
+	}
+
+	/**
+	 * Returns the name of the Plugin for the current command.
+	 * @return the name of the Plugin for the current command.
+	 */
+	String getPluginName() {
+		return pluginName;
+	}
+
+	/**
+	 * Returns the name of the method for the current command.
+	 * @return the name of the method for the current command.
+	 */
+	String getMethodName() {
+		return methodName;
+	}
+
+	/**
+	 * Returns the unparsed JSON arguments of the current command.
+	 * @return the JSON arguments of the current command.
+	 */
+	String getArguments() {
+		return arguments;
+	}
+
+	/**
+	 * Returns the priority of the current command, if the page set one.
+	 * @return the {@link uk.co.tealspoon.savannah.CommandPriority priority}, or -1 if the command has none.
+	 */
+	int getPriority() {
+		return priority;
+	}
+
+	/**
+	 * Returns the timeout of the current command, if the page set one.
+	 * @return the timeout in milliseconds, or -1 if the command has none.
+	 */
+	int getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	/**
+	 * Moves past the opening bracket of the batch or the separator before the next entry.
+	 * @return true if there is another entry, false if the end of the batch has been reached.
+	 */
+	private boolean advance() throws JSONException {
+		if (isFinished) {
+			return false;
+		}
+
+		skipWhitespace();
+		if (!isStarted) {
+			isStarted = true;
+			expect('[');
+			skipWhitespace();
+			if (peek() != ']') {
+				return true;
+			}
+		}
+
+		char c = read();
+		if (c == ',') {
+			skipWhitespace();
+			return true;
+		}
+		else if (c == ']') {
+			isFinished = true;
+			skipWhitespace();
+			if (position < length) {
+				throw syntaxError("Unexpected data after the end of the batch");
+			}
+			return false;
+		}
+		throw syntaxError("Expected , or ]");
+	}
+
+	private void readCommand() throws JSONException {
+		expect('[');
+		skipWhitespace();
+		callbackId = readInt("Callback ID");
+		readSeparator();
+		pluginName = readString();
+		readSeparator();
+		methodName = readString();
+		readSeparator();
+
+		int argumentsStart = position;
+		skipValue();
+		arguments = batch.substring(argumentsStart, position);
+
+		skipWhitespace();
+		priority = -1;
+		timeoutMillis = -1;
+		if (peek() == ',') {
+			readSeparator();
+			if (peek() == 'n') {
+				expectLiteral("null");
+			}
+			else {
+				priority = readInt("Priority");
+				if (!CommandPriority.isValid(priority)) {
+					throw syntaxError("Priority out of range");
+				}
+			}
+			skipWhitespace();
+
+			if (peek() == ',') {
+				readSeparator();
+				timeoutMillis = readInt("Timeout");
+				skipWhitespace();
+			}
+		}
+		expect(']');
+	}
+
+	private void readSeparator() throws JSONException {
+		skipWhitespace();
+		expect(',');
+		skipWhitespace();
+	}
+
+	private int readInt(String name) throws JSONException {
+		long value = 0;
+		int start = position;
+		while (position < length) {
+			char c = batch.charAt(position);
+			if (c < '0' || c > '9') {
+				break;
+			}
+			value = value * 10 + (c - '0');
+			if (value > Integer.MAX_VALUE) {
+				throw syntaxError(name + " out of range");
+			}
+			position += 1;
+		}
+		if (position == start) {
+			throw syntaxError("Expected " + name);
+		}
+		return (int) value;
+	}
+
+	private String readString() throws JSONException {
+		expect('"');
+
+		// fast path: most names contain no escapes, so they can be taken directly from the batch
+		int start = position;
+		while (position < length) {
+			char c = batch.charAt(position);
+			if (c == '"') {
+				position += 1;
+				return batch.substring(start, position - 1);
+			}
+			else if (c == '\\') {
+				break;
+			}
+			position += 1;
+		}
+
+		StringBuilder builder = new StringBuilder(batch.substring(start, position));
+		while (true) {
+			char c = read();
+			if (c == '"') {
+				return builder.toString();
+			}
+			else if (c == '\\') {
+				c = read();
+				switch (c) {
+					case 'b': builder.append('\b'); break;
+					case 'f': builder.append('\f'); break;
+					case 'n': builder.append('\n'); break;
+					case 'r': builder.append('\r'); break;
+					case 't': builder.append('\t'); break;
+					case 'u':
+						if (position + 4 > length) {
+							throw syntaxError("Unterminated escape sequence");
+						}
+						try {
+							builder.append((char) Integer.parseInt(batch.substring(position, position + 4), 16));
+						}
+						catch (NumberFormatException e) {
+							throw syntaxError("Invalid escape sequence");
+						}
+						position += 4;
+						break;
+					default:
+						builder.append(c);
+				}
+			}
+			else {
+				builder.append(c);
+			}
+		}
+	}
+
+	private void skipString() throws JSONException {
+		expect('"');
+		while (true) {
+			char c = read();
+			if (c == '"') {
+				return;
+			}
+			else if (c == '\\') {
+				read();
+			}
+		}
+	}
+
+	/**
+	 * Move past the next JSON value without parsing it.
+	 */
+	private void skipValue() throws JSONException {
+		char c = peek();
+		if (c == '"') {
+			skipString();
+		}
+		else if (c == '[' || c == '{') {
+			int depth = 0;
+			do {
+				c = peek();
+				if (c == '"') {
+					skipString();
+					continue;
+				}
+				position += 1;
+				if (c == '[' || c == '{') {
+					depth += 1;
+				}
+				else if (c == ']' || c == '}') {
+					depth -= 1;
+				}
+			} while (depth > 0);
+		}
+		else {
+			// a number or literal
+			int start = position;
+			while (position < length) {
+				c = batch.charAt(position);
+				if (c == ',' || c == ']' || c == '}' || isWhitespace(c)) {
+					break;
+				}
+				position += 1;
+			}
+			if (position == start) {
+				throw syntaxError("Expected a value");
+			}
+		}
+	}
+
+	private void skipWhitespace() {
+		while (position < length && isWhitespace(batch.charAt(position))) {
+			position += 1;
+		}
+	}
+
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+	}
+
+	private char peek() throws JSONException {
+		if (position >= length) {
+			throw syntaxError("Unexpected end of batch");
+		}
+		return batch.charAt(position);
+	}
+
+	private char read() throws JSONException {
+		char c = peek();
+		position += 1;
+		return c;
+	}
+
+	private void expect(char expected) throws JSONException {
+		if (read() != expected) {
+			position -= 1;
+			throw syntaxError("Expected " + expected);
+		}
+	}
+
+	private void expectLiteral(String literal) throws JSONException {
+		if (!batch.startsWith(literal, position)) {
+			throw syntaxError("Expected " + literal);
+		}
+		position += literal.length();
+	}
+
+	private JSONException syntaxError(String message) {
+		return new JSONException(message + " at character " + position);
+	}
+}
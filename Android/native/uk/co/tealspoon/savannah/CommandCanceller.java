@@ -0,0 +1,55 @@
+package uk.co.tealspoon.savannah;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.Executor;
+
+/**
+ * The built-in {@link #PLUGIN_NAME} plugin, which savannah.js uses to cancel Commands that it has already sent.
+ */
+final class CommandCanceller implements ExecutorPlugin {
+
+	/**
+	 * The name of the built-in plugin which savannah.js uses to cancel Commands.
+	 */
+	static final String PLUGIN_NAME = "savannah.commands";
+
+	private static final Collection<String> methods = Collections.singletonList("cancel");
+
+	// cancellations are cheap, and must not wait behind the Commands they cancel
+	private static final Executor inlineExecutor = new Executor() {
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	@Override
+	public String getName() {
+		return PLUGIN_NAME;
+	}
+
+	@Override
+	public Collection<String> getMethods() {
+		return methods;
+	}
+
+	@Override
+	public Executor getExecutor() {
+		return inlineExecutor;
+	}
+
+	@Override
+	public boolean execute(String action, Command command) {
+		if (!action.equals("cancel")) {
+			return false;
+		}
+		if (!command.hasIntAtIndex(0)) {
+			command.error();
+			return true;
+		}
+		command.getWebViewManager().cancelCommand(command.intAtIndex(0));
+		command.success();
+		return true;
+	}
+
+}
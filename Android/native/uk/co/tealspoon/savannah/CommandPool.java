@@ -0,0 +1,36 @@
+package uk.co.tealspoon.savannah;
+
+/**
+ * A bounded pool of Commands which have sent their final result and can be reused.
+ */
+final class CommandPool {
+
+	private static final int MAX_SIZE = 32;
+
+	private final Command[] commands = new Command[MAX_SIZE];
+	private int size;
+
+	/**
+	 * Takes a Command from the pool.
+	 * @return a recycled Command, or null if the pool is empty.
+	 */
+	synchronized Command obtain() {
+		if (size == 0) {
+			return null;
+		}
+		Command command = commands[--size];
+		commands[size] = null;
+		return command;
+	}
+
+	/**
+	 * Returns a Command to the pool, or drops it if the pool is full.
+	 * @param command a Command which has sent its final result.
+	 */
+	synchronized void release(Command command) {
+		if (size < MAX_SIZE) {
+			commands[size++] = command;
+		}
+	}
+
+}
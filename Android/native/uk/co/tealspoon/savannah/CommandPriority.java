@@ -0,0 +1,40 @@
+package uk.co.tealspoon.savannah;
+
+/**
+ * The priorities of commands. Commands with a higher priority are sent by savannah.js, executed by the shared thread pool, and have
+ * their results delivered to the page ahead of commands with a lower priority. A command is only overtaken by commands of a higher
+ * priority which arrive soon after it, so that a flood of high priority commands cannot starve the rest.
+ * <p>
+ * Pages set the priority of calls with savannah.withPriority, and Plugins set the priority of their methods by implementing
+ * {@link uk.co.tealspoon.savannah.PrioritizedPlugin PrioritizedPlugin}.
+ */
+public final class CommandPriority {
+
+	/**
+	 * The priority of background work, such as syncing or prefetching.
+	 */
+	public static final int LOW = 0;
+
+	/**
+	 * The priority of commands which don't have one set.
+	 */
+	public static final int NORMAL = 1;
+
+	/**
+	 * The priority of work which the user is waiting on, such as the response to a tap.
+	 */
+	public static final int HIGH = 2;
+
+	private CommandPriority() {
+	}
+
+	/**
+	 * Returns true if the given value is a priority.
+	 * @param priority the value.
+	 * @return true if the value is LOW, NORMAL or HIGH.
+	 */
+	static boolean isValid(int priority) {
+		return priority >= LOW && priority <= HIGH;
+	}
+
+}
@@ -0,0 +1,239 @@
+package uk.co.tealspoon.savannah;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.json.JSONObject;
+
+import android.util.Log;
+
+/**
+ * Buffers events published to named streams until they are due to be delivered to the page's subscribers. Subscriptions are made by
+ * savannah.js through the built-in {@link #PLUGIN_NAME} plugin, and belong to the page which made them.
+ * <p>
+ * Events are serialized when they are published, so that the publisher is free to reuse the value. Events published to a stream with no
+ * subscribers are dropped without being serialized. A conflating stream keeps only the latest event published since its last delivery,
+ * and a stream with an interval is delivered at most once per interval. Non-conflating streams buffer up to
+ * {@link #MAX_BUFFERED_EVENTS} events between deliveries, and drop any more.
+ */
+final class EventStreams implements ExecutorPlugin {
+
+	/**
+	 * The name of the built-in plugin which savannah.js uses to subscribe to and unsubscribe from streams.
+	 */
+	static final String PLUGIN_NAME = "savannah.events";
+
+	/**
+	 * The maximum number of events buffered for a non-conflating stream between deliveries.
+	 */
+	static final int MAX_BUFFERED_EVENTS = 256;
+
+	private static final List<String> methods = Arrays.asList("subscribe", "unsubscribe");
+
+	// subscription changes are cheap, and must be applied in the order the page made them
+	private static final Executor inlineExecutor = new Executor() {
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	/**
+	 * A stream which the page has subscribed to.
+	 */
+	private static final class Stream {
+		final String quotedName;
+		long intervalMillis;
+		boolean isConflating;
+		final StringBuilder events = new StringBuilder();
+		int eventCount;
+		int droppedCount;
+		long lastDeliveryMillis = Long.MIN_VALUE / 2;
+
+		Stream(String name) {
+			quotedName = ResultWriter.toJavaScript(name);
+		}
+
+		long getDueMillis() {
+			return lastDeliveryMillis + intervalMillis;
+		}
+	}
+
+	private final Object lock = new Object();
+	private final HashMap<String, Stream> streams = new HashMap<String, Stream>();
+	// the time at which the next delivery is scheduled, or -1 if none is scheduled
+	private long scheduledDeliveryMillis = -1;
+
+	@Override
+	public String getName() {
+		return PLUGIN_NAME;
+	}
+
+	@Override
+	public Collection<String> getMethods() {
+		return methods;
+	}
+
+	@Override
+	public Executor getExecutor() {
+		return inlineExecutor;
+	}
+
+	@Override
+	public boolean execute(String action, Command command) {
+		if (!command.hasStringAtIndex(0)) {
+			command.error();
+			return true;
+		}
+		String name = command.stringAtIndex(0);
+
+		if (action.equals("subscribe")) {
+			JSONObject options = command.objectAtIndex(1, new JSONObject());
+			subscribe(name, Math.max(0, options.optLong("interval", 0)), options.optBoolean("conflate", false));
+			command.success();
+			return true;
+		}
+		else if (action.equals("unsubscribe")) {
+			unsubscribe(name);
+			command.success();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Subscribes to the named stream, or changes how the stream is delivered if it is already subscribed to.
+	 * @param name the name of the stream.
+	 * @param intervalMillis the minimum time between deliveries.
+	 * @param isConflating true if only the latest event should be delivered.
+	 */
+	void subscribe(String name, long intervalMillis, boolean isConflating) {
+		synchronized (lock) {
+			Stream stream = streams.get(name);
+			if (stream == null) {
+				stream = new Stream(name);
+				streams.put(name, stream);
+			}
+			stream.intervalMillis = intervalMillis;
+			stream.isConflating = isConflating;
+		}
+	}
+
+	/**
+	 * Unsubscribes from the named stream, dropping any events which have not been delivered.
+	 * @param name the name of the stream.
+	 */
+	void unsubscribe(String name) {
+		synchronized (lock) {
+			streams.remove(name);
+		}
+	}
+
+	/**
+	 * Unsubscribes from every stream. Called when a new page is loaded.
+	 */
+	void clear() {
+		synchronized (lock) {
+			streams.clear();
+			scheduledDeliveryMillis = -1;
+		}
+	}
+
+	/**
+	 * Returns whether the page is subscribed to the named stream.
+	 * @param name the name of the stream.
+	 * @return true if the stream has subscribers.
+	 */
+	boolean hasSubscribers(String name) {
+		synchronized (lock) {
+			return streams.containsKey(name);
+		}
+	}
+
+	/**
+	 * Adds a serialized event to the named stream.
+	 * @param name the name of the stream.
+	 * @param event the event as a JavaScript literal.
+	 * @param nowMillis the current uptime.
+	 * @return the delay after which the events should be delivered, or -1 if no delivery needs to be scheduled, because one already
+	 * has been or the stream has no subscribers.
+	 */
+	long add(String name, CharSequence event, long nowMillis) {
+		synchronized (lock) {
+			Stream stream = streams.get(name);
+			if (stream == null) {
+				return -1;
+			}
+
+			if (stream.isConflating) {
+				stream.events.setLength(0);
+				stream.eventCount = 0;
+			}
+			else if (stream.eventCount >= MAX_BUFFERED_EVENTS) {
+				stream.droppedCount++;
+				return -1;
+			}
+
+			if (stream.eventCount > 0) {
+				stream.events.append(',');
+			}
+			stream.events.append(event);
+			stream.eventCount++;
+
+			long dueMillis = Math.max(stream.getDueMillis(), nowMillis);
+			if (scheduledDeliveryMillis == -1 || dueMillis < scheduledDeliveryMillis) {
+				scheduledDeliveryMillis = dueMillis;
+				return dueMillis - nowMillis;
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Writes the events which are due for delivery to the given builder, as a comma-separated list of arrays of a stream name and the
+	 * events published to that stream.
+	 * @param builder the builder to write to.
+	 * @param nowMillis the current uptime.
+	 * @return the delay after which the remaining events should be delivered, or -1 if there are none.
+	 */
+	long drain(StringBuilder builder, long nowMillis) {
+		synchronized (lock) {
+			long nextDueMillis = -1;
+			boolean isFirst = true;
+
+			for (Stream stream : streams.values()) {
+				if (stream.eventCount == 0) {
+					continue;
+				}
+
+				long dueMillis = stream.getDueMillis();
+				if (dueMillis > nowMillis) {
+					if (nextDueMillis == -1 || dueMillis < nextDueMillis) {
+						nextDueMillis = dueMillis;
+					}
+					continue;
+				}
+
+				if (!isFirst) {
+					builder.append(',');
+				}
+				isFirst = false;
+				builder.append('[').append(stream.quotedName).append(",[").append(stream.events).append("]]");
+				stream.events.setLength(0);
+				stream.eventCount = 0;
+				stream.lastDeliveryMillis = nowMillis;
+
+				if (stream.droppedCount > 0) {
+					Log.w("Savannah", "Dropped " + stream.droppedCount + " events from stream " + stream.quotedName +
+							" because the page could not keep up. Consider conflating the stream.");
+					stream.droppedCount = 0;
+				}
+			}
+
+			scheduledDeliveryMillis = nextDueMillis;
+			return nextDueMillis == -1 ? -1 : nextDueMillis - nowMillis;
+		}
+	}
+}
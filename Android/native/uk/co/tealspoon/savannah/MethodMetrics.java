@@ -0,0 +1,112 @@
+package uk.co.tealspoon.savannah;
+
+/**
+ * An immutable snapshot of the metrics recorded for one method of one {@link uk.co.tealspoon.savannah.Plugin Plugin}. Times are in
+ * nanoseconds, and result sizes are in characters of the serialized result.
+ * @see uk.co.tealspoon.savannah.WebViewManager#setMetricsEnabled(boolean)
+ */
+public final class MethodMetrics {
+
+	private final String pluginName;
+	private final String methodName;
+	private final long commandCount;
+	private final long completedCount;
+	private final long errorCount;
+	private final Histogram queueTime;
+	private final Histogram executeTime;
+	private final Histogram timeToResult;
+	private final Histogram resultSize;
+
+	MethodMetrics(String pluginName, String methodName, long commandCount, long completedCount, long errorCount,
+				  Histogram queueTime, Histogram executeTime, Histogram timeToResult, Histogram resultSize) {
+		this.pluginName = pluginName;
+		this.methodName = methodName;
+		this.commandCount = commandCount;
+		this.completedCount = completedCount;
+		this.errorCount = errorCount;
+		this.queueTime = queueTime;
+		this.executeTime = executeTime;
+		this.timeToResult = timeToResult;
+		this.resultSize = resultSize;
+	}
+
+	/**
+	 * Returns the name of the Plugin.
+	 * @return the name of the Plugin.
+	 */
+	public String getPluginName() {
+		return pluginName;
+	}
+
+	/**
+	 * Returns the name of the method.
+	 * @return the name of the method.
+	 */
+	public String getMethodName() {
+		return methodName;
+	}
+
+	/**
+	 * Returns the number of commands received for the method.
+	 * @return the number of commands.
+	 */
+	public long getCommandCount() {
+		return commandCount;
+	}
+
+	/**
+	 * Returns the number of commands which have sent their final result.
+	 * @return the number of completed commands.
+	 */
+	public long getCompletedCount() {
+		return completedCount;
+	}
+
+	/**
+	 * Returns the number of commands which completed with an error.
+	 * @return the number of failed commands.
+	 */
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+	/**
+	 * Returns the proportion of completed commands which completed with an error.
+	 * @return the error rate, from 0 to 1.
+	 */
+	public double getErrorRate() {
+		return completedCount == 0 ? 0 : (double) errorCount / completedCount;
+	}
+
+	/**
+	 * Returns the times that commands waited for their Plugin's Executor to run them.
+	 * @return the queue times.
+	 */
+	public Histogram getQueueTime() {
+		return queueTime;
+	}
+
+	/**
+	 * Returns the times taken by the Plugin's execute method.
+	 * @return the execute times.
+	 */
+	public Histogram getExecuteTime() {
+		return executeTime;
+	}
+
+	/**
+	 * Returns the times from commands being received to their final results being sent.
+	 * @return the times to result.
+	 */
+	public Histogram getTimeToResult() {
+		return timeToResult;
+	}
+
+	/**
+	 * Returns the sizes of every result, progress update and chunk sent for the method.
+	 * @return the result sizes.
+	 */
+	public Histogram getResultSize() {
+		return resultSize;
+	}
+}
@@ -0,0 +1,172 @@
+package uk.co.tealspoon.savannah;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * The Savannah configuration of a page: its table of {@link uk.co.tealspoon.savannah.Plugin Plugins} by name, and the script which
+ * tells savannah.js that the page has loaded, along with its arguments as a JSON array. Both are built once, so that a PageConfig can be reused for every page load that shares it.
+ */
+final class PageConfig {
+
+	/**
+	 * Configuration for pages which Savannah is not provided to.
+	 */
+	static final PageConfig NONE = new PageConfig(Collections.<String, Plugin>emptyMap(), null, null);
+
+	private final Map<String, Plugin> plugins;
+	private final String bootstrapScript;
+	private final String bootstrapArguments;
+
+	private PageConfig(Map<String, Plugin> plugins, String bootstrapScript, String bootstrapArguments) {
+		this.plugins = plugins;
+		this.bootstrapScript = bootstrapScript;
+		this.bootstrapArguments = bootstrapArguments;
+	}
+
+	/**
+	 * Builds the configuration for pages with the given plugins and settings.
+	 * @param pluginsCollection the Plugins to make available to the page, or null for none.
+	 * @param settings the settings to pass to the page, or null for none.
+	 * @return the configuration.
+	 */
+	static PageConfig create(Collection<Plugin> pluginsCollection, JSONObject settings) {
+		int initialCapacity = (pluginsCollection == null) ? 0 : pluginsCollection.size();
+
+		HashMap<String, Plugin> plugins = new HashMap<String, Plugin>(initialCapacity);
+
+		if (initialCapacity > 0) {
+			for (Plugin p : pluginsCollection) {
+				plugins.put(p.getName(), p);
+			}
+		}
+
+		String settingsJSON = settings == null ? "{}" : ResultWriter.toJavaScript(settings);
+
+		String manifest = createManifest(plugins);
+		String arguments;
+		if (manifest != null) {
+			arguments = settingsJSON + ", " + ResultWriter.toJavaScript(manifest);
+		}
+		else {
+			JSONArray pluginNames = new JSONArray();
+			JSONArray pluginMethods = new JSONArray();
+			for (Map.Entry<String, Plugin> entry : plugins.entrySet()) {
+				pluginNames.put(entry.getKey());
+				pluginMethods.put(new JSONArray(entry.getValue().getMethods()));
+			}
+			arguments = settingsJSON + ", " + pluginNames.toString() + ", " + pluginMethods.toString();
+		}
+
+		return new PageConfig(plugins, "window.savannah._didFinishLoad(" + arguments + ");", "[" + arguments + "]");
+	}
+
+	/**
+	 * Creates the compact manifest of the given plugins and their methods, of the form "name:method,method;name:method", which is
+	 * much smaller than the equivalent JSON arrays. Methods with a priority other than normal are followed by "!priority", and methods
+	 * whose results savannah.js may cache by "@ttl", where ttl is the time to live in milliseconds, or is empty if the results do not
+	 * expire.
+	 * @param plugins the Plugins by name.
+	 * @return the manifest, or null if a plugin or method name contains one of the manifest's separators.
+	 */
+	private static String createManifest(Map<String, Plugin> plugins) {
+		StringBuilder manifest = new StringBuilder();
+		for (Map.Entry<String, Plugin> entry : plugins.entrySet()) {
+			if (!isManifestSafe(entry.getKey())) {
+				return null;
+			}
+			if (manifest.length() > 0) {
+				manifest.append(';');
+			}
+			manifest.append(entry.getKey()).append(':');
+
+			Plugin plugin = entry.getValue();
+			Collection<String> methods = plugin.getMethods();
+			if (methods != null) {
+				boolean isFirst = true;
+				for (String method : methods) {
+					if (!isManifestSafe(method)) {
+						return null;
+					}
+					if (!isFirst) {
+						manifest.append(',');
+					}
+					manifest.append(method);
+					if (plugin instanceof PrioritizedPlugin) {
+						int priority = ((PrioritizedPlugin) plugin).getPriority(method);
+						if (priority != CommandPriority.NORMAL && CommandPriority.isValid(priority)) {
+							manifest.append('!').append(priority);
+						}
+					}
+					if (plugin instanceof CacheablePlugin) {
+						appendMirroredPolicy(manifest, ((CacheablePlugin) plugin).getCachePolicy(method));
+					}
+					isFirst = false;
+				}
+			}
+		}
+		return manifest.toString();
+	}
+
+	/**
+	 * Writes the time to live of a method's results to the manifest, if savannah.js may cache them.
+	 * @param manifest the manifest.
+	 * @param policy the cache policy of the method, or null.
+	 */
+	private static void appendMirroredPolicy(StringBuilder manifest, CachePolicy policy) {
+		if (policy != null && policy.isMirrored()) {
+			manifest.append('@');
+			if (policy.getTimeToLiveMillis() != CachePolicy.NO_EXPIRY) {
+				manifest.append(policy.getTimeToLiveMillis());
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the given plugin or method name can be written to the compact manifest.
+	 * @param name a plugin or method name.
+	 * @return true if the name contains none of the manifest's separators.
+	 */
+	private static boolean isManifestSafe(String name) {
+		return name != null && name.length() > 0 && name.indexOf(';') == -1 && name.indexOf(':') == -1 && name.indexOf(',') == -1
+				&& name.indexOf('@') == -1 && name.indexOf('!') == -1;
+	}
+
+	/**
+	 * Returns true if Savannah is provided to pages with this configuration.
+	 * @return true unless this is {@link #NONE}.
+	 */
+	boolean isProvided() {
+		return this != NONE;
+	}
+
+	/**
+	 * Returns the page's Plugins by name. The map must not be modified.
+	 * @return the Plugins.
+	 */
+	Map<String, Plugin> getPlugins() {
+		return plugins;
+	}
+
+	/**
+	 * Returns the script which passes the settings and plugins to savannah.js once the page has loaded.
+	 * @return the script, or null if Savannah is not provided.
+	 */
+	String getBootstrapScript() {
+		return bootstrapScript;
+	}
+
+	/**
+	 * Returns the arguments of the bootstrap script as a JSON array, for savannah.js to pass to its _didFinishLoad function itself.
+	 * @return the arguments, or null if Savannah is not provided.
+	 */
+	String getBootstrapArguments() {
+		return bootstrapArguments;
+	}
+
+}
@@ -0,0 +1,53 @@
+package uk.co.tealspoon.savannah;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least recently used cache of {@link uk.co.tealspoon.savannah.PageConfig PageConfigs} by cache key.
+ */
+final class PageConfigCache {
+
+	private static final int MAX_SIZE = 32;
+
+	private final LinkedHashMap<String, PageConfig> configs = new LinkedHashMap<String, PageConfig>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, PageConfig> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+
+	/**
+	 * Returns the configuration cached under the given key.
+	 * @param key the cache key.
+	 * @return the configuration, or null if none is cached.
+	 */
+	synchronized PageConfig get(String key) {
+		return configs.get(key);
+	}
+
+	/**
+	 * Caches a configuration under the given key.
+	 * @param key the cache key.
+	 * @param config the configuration.
+	 */
+	synchronized void put(String key, PageConfig config) {
+		configs.put(key, config);
+	}
+
+	/**
+	 * Removes the configuration cached under the given key, if any.
+	 * @param key the cache key.
+	 */
+	synchronized void remove(String key) {
+		configs.remove(key);
+	}
+
+	/**
+	 * Removes all cached configurations.
+	 */
+	synchronized void clear() {
+		configs.clear();
+	}
+
+}
@@ -0,0 +1,151 @@
+package uk.co.tealspoon.savannah;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records metrics for each method of each Plugin. Recording takes a few atomic increments and never locks, so that it can be left on in
+ * release builds.
+ */
+final class PluginMetrics {
+
+	private final ConcurrentHashMap<String, ConcurrentHashMap<String, MethodRecorder>> plugins =
+			new ConcurrentHashMap<String, ConcurrentHashMap<String, MethodRecorder>>();
+
+	/**
+	 * Returns the recorder for the given method, creating it if necessary.
+	 * @param pluginName the name of the Plugin.
+	 * @param methodName the name of the method.
+	 * @return the recorder.
+	 */
+	MethodRecorder recorderFor(String pluginName, String methodName) {
+		ConcurrentHashMap<String, MethodRecorder> methods = plugins.get(pluginName);
+		if (methods == null) {
+			methods = new ConcurrentHashMap<String, MethodRecorder>();
+			ConcurrentHashMap<String, MethodRecorder> existing = plugins.putIfAbsent(pluginName, methods);
+			if (existing != null) {
+				methods = existing;
+			}
+		}
+
+		MethodRecorder recorder = methods.get(methodName);
+		if (recorder == null) {
+			recorder = new MethodRecorder(pluginName, methodName);
+			MethodRecorder existing = methods.putIfAbsent(methodName, recorder);
+			if (existing != null) {
+				recorder = existing;
+			}
+		}
+		return recorder;
+	}
+
+	/**
+	 * Returns a snapshot of the metrics for every method which has been recorded.
+	 * @return the metrics.
+	 */
+	List<MethodMetrics> snapshot() {
+		List<MethodMetrics> metrics = new ArrayList<MethodMetrics>();
+		for (ConcurrentHashMap<String, MethodRecorder> methods : plugins.values()) {
+			for (MethodRecorder recorder : methods.values()) {
+				metrics.add(recorder.snapshot());
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * Records the metrics for one method of one Plugin.
+	 */
+	static final class MethodRecorder {
+		private final String pluginName;
+		private final String methodName;
+		private final AtomicLong commandCount = new AtomicLong();
+		private final AtomicLong completedCount = new AtomicLong();
+		private final AtomicLong errorCount = new AtomicLong();
+		private final HistogramRecorder queueTime = new HistogramRecorder();
+		private final HistogramRecorder executeTime = new HistogramRecorder();
+		private final HistogramRecorder timeToResult = new HistogramRecorder();
+		private final HistogramRecorder resultSize = new HistogramRecorder();
+
+		private MethodRecorder(String pluginName, String methodName) {
+			this.pluginName = pluginName;
+			this.methodName = methodName;
+		}
+
+		/**
+		 * Records that a command has been received.
+		 */
+		void recordCommand() {
+			commandCount.incrementAndGet();
+		}
+
+		/**
+		 * Records the execution of a command.
+		 * @param receivedNanos the time at which the command was received.
+		 * @param startNanos the time at which the Plugin started executing the command.
+		 * @param endNanos the time at which the Plugin finished executing the command.
+		 */
+		void recordExecution(long receivedNanos, long startNanos, long endNanos) {
+			queueTime.record(startNanos - receivedNanos);
+			executeTime.record(endNanos - startNanos);
+		}
+
+		/**
+		 * Records a result, progress update or chunk sent for a command.
+		 * @param size the number of characters in the serialized result.
+		 * @param status the status of the result.
+		 * @param isFinal true if this is the command's final result.
+		 * @param receivedNanos the time at which the command was received.
+		 */
+		void recordResult(int size, boolean status, boolean isFinal, long receivedNanos) {
+			resultSize.record(size);
+			if (isFinal) {
+				timeToResult.record(System.nanoTime() - receivedNanos);
+				completedCount.incrementAndGet();
+				if (!status) {
+					errorCount.incrementAndGet();
+				}
+			}
+		}
+
+		private MethodMetrics snapshot() {
+			return new MethodMetrics(pluginName, methodName, commandCount.get(), completedCount.get(), errorCount.get(),
+					queueTime.snapshot(), executeTime.snapshot(), timeToResult.snapshot(), resultSize.snapshot());
+		}
+	}
+
+	/**
+	 * Counts values into the buckets of a {@link uk.co.tealspoon.savannah.Histogram Histogram}.
+	 */
+	private static final class HistogramRecorder {
+		private final AtomicLongArray counts = new AtomicLongArray(Histogram.BUCKET_COUNT);
+		private final AtomicLong sum = new AtomicLong();
+
+		/**
+		 * Records a value. Negative values, which can only come from a clock going backwards, are recorded as 0.
+		 * @param value the value to record.
+		 */
+		void record(long value) {
+			if (value < 0) {
+				value = 0;
+			}
+			counts.incrementAndGet(Histogram.indexOf(value));
+			sum.addAndGet(value);
+		}
+
+		/**
+		 * Returns a snapshot of the values recorded so far. Values recorded while the snapshot is taken may or may not be included.
+		 * @return the snapshot.
+		 */
+		Histogram snapshot() {
+			long[] snapshot = new long[counts.length()];
+			for (int i = 0; i < snapshot.length; i++) {
+				snapshot[i] = counts.get(i);
+			}
+			return new Histogram(snapshot, sum.get());
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package uk.co.tealspoon.savannah;
+
+/**
+ * A PrioritizedPlugin is a {@link uk.co.tealspoon.savannah.Plugin Plugin} whose methods have a {@link uk.co.tealspoon.savannah.CommandPriority
+ * priority} other than normal. A priority set by the page for a call, with savannah.withPriority, overrides the method's priority.
+ */
+public interface PrioritizedPlugin extends Plugin {
+
+	/**
+	 * Returns the priority of calls to the given method.
+	 * @param action the name of a method of this Plugin.
+	 * @return {@link uk.co.tealspoon.savannah.CommandPriority#LOW}, {@link uk.co.tealspoon.savannah.CommandPriority#NORMAL} or
+	 * {@link uk.co.tealspoon.savannah.CommandPriority#HIGH}.
+	 */
+	public int getPriority(String action);
+}
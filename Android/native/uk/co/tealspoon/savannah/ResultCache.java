@@ -0,0 +1,236 @@
+package uk.co.tealspoon.savannah;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A bounded, least recently used cache of the serialized results of {@link uk.co.tealspoon.savannah.CacheablePlugin CacheablePlugin}
+ * methods, keyed by plugin, method and canonical arguments.
+ */
+final class ResultCache {
+
+	/**
+	 * The key of a cached result.
+	 */
+	static final class Key {
+		final String pluginName;
+		final String action;
+		final String arguments;
+		final CachePolicy policy;
+		// the generation of the cache when the call was received, which is not part of the key's identity
+		final long generation;
+
+		private Key(String pluginName, String action, String arguments, CachePolicy policy, long generation) {
+			this.pluginName = pluginName;
+			this.action = action;
+			this.arguments = arguments;
+			this.policy = policy;
+			this.generation = generation;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) o;
+			return pluginName.equals(key.pluginName) && action.equals(key.action) && arguments.equals(key.arguments);
+		}
+
+		@Override
+		public int hashCode() {
+			return (pluginName.hashCode() * 31 + action.hashCode()) * 31 + arguments.hashCode();
+		}
+	}
+
+	/**
+	 * A cached result.
+	 */
+	private static final class Entry {
+		final String result;
+		final long expiryMillis;
+
+		Entry(String result, long expiryMillis) {
+			this.result = result;
+			this.expiryMillis = expiryMillis;
+		}
+	}
+
+	private int maxSize;
+	// incremented whenever results are invalidated, so that calls which were running at the time don't cache stale results
+	private volatile long generation;
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+			return size() > maxSize;
+		}
+	};
+
+	/**
+	 * Creates a new cache.
+	 * @param maxSize the maximum number of results to cache.
+	 */
+	ResultCache(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Creates the key for a call to a Plugin method. Must be called when the call is received, as the key records the current
+	 * generation of the cache.
+	 * @param pluginName the name of the Plugin.
+	 * @param action the name of the method.
+	 * @param argumentsJSON the JSON array of arguments of the call.
+	 * @param policy the cache policy of the method.
+	 * @return the key, or null if the call can't be cached because its arguments are binary or malformed.
+	 */
+	Key keyFor(String pluginName, String action, String argumentsJSON, CachePolicy policy) {
+		String arguments = canonicalize(argumentsJSON);
+		return (arguments == null) ? null : new Key(pluginName, action, arguments, policy, generation);
+	}
+
+	/**
+	 * Returns the cached result for the given key.
+	 * @param key the key.
+	 * @param nowMillis the current time, as given by SystemClock.uptimeMillis().
+	 * @return the serialized result, or null if there is none or it has expired.
+	 */
+	synchronized String get(Key key, long nowMillis) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (nowMillis >= entry.expiryMillis) {
+			entries.remove(key);
+			return null;
+		}
+		return entry.result;
+	}
+
+	/**
+	 * Caches a result, if it is small enough for the key's policy and no results have been invalidated since the key was created.
+	 * @param key the key.
+	 * @param result the serialized result.
+	 * @param nowMillis the current time, as given by SystemClock.uptimeMillis().
+	 */
+	synchronized void put(Key key, String result, long nowMillis) {
+		if (result.length() > key.policy.getMaxResultLength() || key.generation != generation) {
+			return;
+		}
+		long timeToLive = key.policy.getTimeToLiveMillis();
+		long expiryMillis = (timeToLive > Long.MAX_VALUE - nowMillis) ? Long.MAX_VALUE : nowMillis + timeToLive;
+		entries.put(key, new Entry(result, expiryMillis));
+	}
+
+	/**
+	 * Removes the cached results of a Plugin, or of one of its methods.
+	 * @param pluginName the name of the Plugin.
+	 * @param action the name of the method, or null for all of the Plugin's methods.
+	 */
+	synchronized void invalidate(String pluginName, String action) {
+		generation += 1;
+		Iterator<Key> iterator = entries.keySet().iterator();
+		while (iterator.hasNext()) {
+			Key key = iterator.next();
+			if (key.pluginName.equals(pluginName) && (action == null || key.action.equals(action))) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Removes all cached results.
+	 */
+	synchronized void clear() {
+		generation += 1;
+		entries.clear();
+	}
+
+	/**
+	 * Sets the maximum number of results to cache, evicting the least recently used results if there are more.
+	 * @param maxSize the maximum number of results.
+	 */
+	synchronized void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+		Iterator<Key> iterator = entries.keySet().iterator();
+		while (entries.size() > maxSize && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Returns the canonical form of the given arguments, in which the keys of objects are sorted, so that equal arguments have equal keys
+	 * however the page built them.
+	 * @param argumentsJSON the JSON array of arguments of a call.
+	 * @return the canonical JSON, or null if the arguments are binary or malformed.
+	 */
+	static String canonicalize(String argumentsJSON) {
+		if (argumentsJSON == null) {
+			return "[]";
+		}
+		if (argumentsJSON.indexOf(Command.BINARY_KEY) != -1) {
+			return null;
+		}
+		// savannah.js writes arrays and primitives with JSON.stringify, which is already canonical
+		if (argumentsJSON.indexOf('{') == -1) {
+			return argumentsJSON;
+		}
+
+		try {
+			StringBuilder builder = new StringBuilder(argumentsJSON.length());
+			writeCanonical(builder, new JSONArray(argumentsJSON));
+			return builder.toString();
+		}
+		catch (JSONException e) {
+			return null;
+		}
+	}
+
+	private static void writeCanonical(StringBuilder builder, Object value) throws JSONException {
+		if (value instanceof JSONObject) {
+			JSONObject object = (JSONObject) value;
+			TreeSet<String> keys = new TreeSet<String>();
+			Iterator<String> iterator = object.keys();
+			while (iterator.hasNext()) {
+				keys.add(iterator.next());
+			}
+
+			builder.append('{');
+			boolean isFirst = true;
+			for (String key : keys) {
+				if (!isFirst) {
+					builder.append(',');
+				}
+				builder.append(JSONObject.quote(key)).append(':');
+				writeCanonical(builder, object.get(key));
+				isFirst = false;
+			}
+			builder.append('}');
+		}
+		else if (value instanceof JSONArray) {
+			JSONArray array = (JSONArray) value;
+			builder.append('[');
+			for (int i = 0; i < array.length(); i++) {
+				if (i > 0) {
+					builder.append(',');
+				}
+				writeCanonical(builder, array.get(i));
+			}
+			builder.append(']');
+		}
+		else if (value instanceof String) {
+			builder.append(JSONObject.quote((String) value));
+		}
+		else {
+			// numbers, booleans and null
+			builder.append(value);
+		}
+	}
+
+}
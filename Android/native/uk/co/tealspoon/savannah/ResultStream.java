@@ -0,0 +1,113 @@
+package uk.co.tealspoon.savannah;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A ResultStream lets a Plugin write a large result as it is produced, rather than building it in memory and sending it in one go.
+ * Written text is passed to the WebView in bounded chunks, so that no single script evaluation blocks the UI thread for long.
+ * <p>
+ * By default, the text written to a ResultStream must be the JSON representation of the result. The chunks are reassembled and parsed
+ * in the WebView, and the Command succeeds with the parsed value when the stream is closed. An incremental ResultStream instead sends
+ * each chunk to the WebView's progress handlers as a string, and succeeds with no value when the stream is closed.
+ * <p>
+ * If the Command reports an error while the stream is open, the chunks sent so far are discarded and further writes throw an IOException.
+ * Writes also throw an IOException once the page has cancelled the Command, so that a Plugin streaming a long result stops.
+ * @see uk.co.tealspoon.savannah.Command#openResultStream(boolean)
+ */
+public class ResultStream extends Writer {
+
+	private final Command command;
+	private final boolean isIncremental;
+	private final int chunkSize;
+	private final StringBuilder chunk;
+	private boolean isClosed;
+
+	/**
+	 * Creates a new ResultStream for the given Command.
+	 * @param command the Command whose result is written to this stream.
+	 * @param isIncremental true if each chunk should be sent to the WebView's progress handlers.
+	 * @param chunkSize the maximum number of characters to send to the WebView at once.
+	 */
+	ResultStream(Command command, boolean isIncremental, int chunkSize) {
+		this.command = command;
+		this.isIncremental = isIncremental;
+		this.chunkSize = chunkSize;
+		this.chunk = new StringBuilder(Math.min(chunkSize, 1024));
+	}
+
+	/**
+	 * Returns true if each chunk is sent to the WebView's progress handlers rather than being reassembled into a single result.
+	 * @return true if this stream is incremental, false otherwise.
+	 */
+	public boolean isIncremental() {
+		return isIncremental;
+	}
+
+	@Override
+	public synchronized void write(char[] buffer, int offset, int length) throws IOException {
+		assertOpen();
+		while (length > 0) {
+			int count = Math.min(length, chunkSize - chunk.length());
+			chunk.append(buffer, offset, count);
+			offset += count;
+			length -= count;
+			if (chunk.length() == chunkSize) {
+				sendChunk(false);
+			}
+		}
+	}
+
+	@Override
+	public synchronized void write(String string, int offset, int length) throws IOException {
+		assertOpen();
+		while (length > 0) {
+			int count = Math.min(length, chunkSize - chunk.length());
+			chunk.append(string, offset, offset + count);
+			offset += count;
+			length -= count;
+			if (chunk.length() == chunkSize) {
+				sendChunk(false);
+			}
+		}
+	}
+
+	/**
+	 * Sends any text written since the last chunk was sent to the WebView, without completing the result.
+	 * @throws IOException if the stream is closed.
+	 */
+	@Override
+	public synchronized void flush() throws IOException {
+		assertOpen();
+		if (chunk.length() > 0) {
+			sendChunk(false);
+		}
+	}
+
+	/**
+	 * Sends any remaining text to the WebView and completes the Command successfully. Closing a closed stream has no effect.
+	 */
+	@Override
+	public synchronized void close() {
+		if (!isClosed) {
+			isClosed = true;
+			command.sendResultChunk(chunk.toString(), true, isIncremental);
+			chunk.setLength(0);
+		}
+	}
+
+	private void sendChunk(boolean isFinal) throws IOException {
+		String text = chunk.toString();
+		chunk.setLength(0);
+		if (!command.sendResultChunk(text, isFinal, isIncremental)) {
+			isClosed = true;
+			throw new IOException("The Command's callbacks have been discarded");
+		}
+	}
+
+	private void assertOpen() throws IOException {
+		if (isClosed) {
+			throw new IOException("The result stream is closed");
+		}
+	}
+}
@@ -0,0 +1,276 @@
+package uk.co.tealspoon.savannah;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Serializes Plugin results as JSON, which is also valid as JavaScript literals, so the same output can be evaluated as a script or
+ * posted to a message port. Values are written in a single pass into a builder which is reused by each thread, so that large results are
+ * not copied several times on their way to the WebView.
+ */
+final class ResultWriter {
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	// don't hold on to the memory used by unusually large results
+	private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private static final ThreadLocal<ResultWriter> writers = new ThreadLocal<ResultWriter>() {
+		@Override
+		protected ResultWriter initialValue() {
+			return new ResultWriter();
+		}
+	};
+
+	private StringBuilder builder = new StringBuilder(INITIAL_CAPACITY);
+
+	private ResultWriter() {
+	}
+
+	/**
+	 * Returns the calling thread's ResultWriter, emptied and ready for use.
+	 * @return an empty ResultWriter.
+	 */
+	static ResultWriter obtain() {
+		ResultWriter writer = writers.get();
+		if (writer.builder.capacity() > MAX_RETAINED_CAPACITY) {
+			writer.builder = new StringBuilder(INITIAL_CAPACITY);
+		}
+		else {
+			writer.builder.setLength(0);
+		}
+		return writer;
+	}
+
+	/**
+	 * Returns the given value as a JavaScript literal.
+	 * @param value the value to serialize.
+	 * @return the JavaScript literal.
+	 */
+	static String toJavaScript(Object value) {
+		ResultWriter writer = obtain();
+		writer.writeValue(value);
+		return writer.builder.toString();
+	}
+
+	/**
+	 * Returns the builder that this ResultWriter writes to. The contents of the builder are only valid until the next call to
+	 * {@link #obtain()} on the same thread.
+	 * @return the builder.
+	 */
+	StringBuilder getBuilder() {
+		return builder;
+	}
+
+	/**
+	 * Writes the arguments to savannah.js's _callback function for a result.
+	 * @param callbackId the callback ID of the Command.
+	 * @param status the status of the result.
+	 * @param message the result.
+	 * @param keepCallback true if the callback should be kept rather than discarded.
+	 * @param isChunk true if the message is a chunk of the JSON representation of the result.
+	 * @return this ResultWriter.
+	 */
+	ResultWriter writeResult(int callbackId, boolean status, Object message, boolean keepCallback, boolean isChunk) {
+		builder.append(callbackId).append(',').append(status).append(',');
+		writeValue(message);
+		builder.append(',').append(keepCallback);
+		if (isChunk) {
+			builder.append(",true");
+		}
+		return this;
+	}
+
+	/**
+	 * Writes the arguments to savannah.js's _callback function for a boolean result, without boxing it.
+	 * @param callbackId the callback ID of the Command.
+	 * @param status the status of the result.
+	 * @param message the result.
+	 * @param keepCallback true if the callback should be kept rather than discarded.
+	 * @return this ResultWriter.
+	 */
+	ResultWriter writeResult(int callbackId, boolean status, boolean message, boolean keepCallback) {
+		builder.append(callbackId).append(',').append(status).append(',').append(message).append(',').append(keepCallback);
+		return this;
+	}
+
+	/**
+	 * Writes the arguments to savannah.js's _callback function for an integer result, without boxing it.
+	 * @param callbackId the callback ID of the Command.
+	 * @param status the status of the result.
+	 * @param message the result.
+	 * @param keepCallback true if the callback should be kept rather than discarded.
+	 * @return this ResultWriter.
+	 */
+	ResultWriter writeResult(int callbackId, boolean status, long message, boolean keepCallback) {
+		builder.append(callbackId).append(',').append(status).append(',').append(message).append(',').append(keepCallback);
+		return this;
+	}
+
+	/**
+	 * Writes the arguments to savannah.js's _callback function for a number result, without boxing it.
+	 * @param callbackId the callback ID of the Command.
+	 * @param status the status of the result.
+	 * @param message the result.
+	 * @param keepCallback true if the callback should be kept rather than discarded.
+	 * @return this ResultWriter.
+	 */
+	ResultWriter writeResult(int callbackId, boolean status, double message, boolean keepCallback) {
+		builder.append(callbackId).append(',').append(status).append(',');
+		writeDouble(message);
+		builder.append(',').append(keepCallback);
+		return this;
+	}
+
+	/**
+	 * Writes the given number as a JavaScript literal, without boxing it.
+	 * @param value the number to write.
+	 * @return this ResultWriter.
+	 */
+	ResultWriter writeValue(double value) {
+		writeDouble(value);
+		return this;
+	}
+
+	/**
+	 * Writes the given value as a JavaScript literal.
+	 * @param value a JSONObject, JSONArray, String, Boolean, Number, byte[], ByteBuffer, null or {@link JSONObject#NULL}. Other values are
+	 * written as strings.
+	 * @return this ResultWriter.
+	 */
+	ResultWriter writeValue(Object value) {
+		if (value == null || value == JSONObject.NULL) {
+			builder.append("null");
+		}
+		else if (value instanceof String) {
+			writeString((String) value);
+		}
+		else if (value instanceof Boolean) {
+			builder.append(((Boolean) value).booleanValue());
+		}
+		else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+			builder.append(((Number) value).longValue());
+		}
+		else if (value instanceof Number) {
+			writeDouble(((Number) value).doubleValue());
+		}
+		else if (value instanceof JSONObject) {
+			writeObject((JSONObject) value);
+		}
+		else if (value instanceof JSONArray) {
+			writeArray((JSONArray) value);
+		}
+		else if (value instanceof byte[]) {
+			writeBytes(ByteBuffer.wrap((byte[]) value));
+		}
+		else if (value instanceof ByteBuffer) {
+			writeBytes((ByteBuffer) value);
+		}
+		else {
+			writeString(value.toString());
+		}
+		return this;
+	}
+
+	private void writeDouble(double value) {
+		// NaN and the infinities can't be represented in JSON, so do as JSON.stringify does
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			builder.append("null");
+		}
+		else if (value == (long) value) {
+			builder.append((long) value);
+		}
+		else {
+			builder.append(value);
+		}
+	}
+
+	private void writeObject(JSONObject object) {
+		builder.append('{');
+		Iterator<String> keys = object.keys();
+		boolean isFirst = true;
+		while (keys.hasNext()) {
+			String key = keys.next();
+			if (!isFirst) {
+				builder.append(',');
+			}
+			isFirst = false;
+			writeString(key);
+			builder.append(':');
+			writeValue(object.opt(key));
+		}
+		builder.append('}');
+	}
+
+	private void writeArray(JSONArray array) {
+		builder.append('[');
+		for (int i = 0, length = array.length(); i < length; i += 1) {
+			if (i > 0) {
+				builder.append(',');
+			}
+			writeValue(array.opt(i));
+		}
+		builder.append(']');
+	}
+
+	/**
+	 * Write the bytes between the buffer's position and limit as a placeholder object containing a string with one character per byte,
+	 * which savannah.js turns back into a Uint8Array. Unlike base64, most bytes are written as a single character.
+	 */
+	private void writeBytes(ByteBuffer value) {
+		builder.append("{\"").append(Command.BINARY_KEY).append("\":\"");
+		for (int i = value.position(), limit = value.limit(); i < limit; i += 1) {
+			int b = value.get(i) & 0xff;
+			if (b >= 0x20 && b != '"' && b != '\\') {
+				builder.append((char) b);
+			}
+			else if (b == '"' || b == '\\') {
+				builder.append('\\').append((char) b);
+			}
+			else {
+				builder.append("\\u00").append(HEX_DIGITS[b >> 4]).append(HEX_DIGITS[b & 0xf]);
+			}
+		}
+		builder.append("\"}");
+	}
+
+	private void writeString(String value) {
+		builder.append('"');
+		int length = value.length();
+		int runStart = 0;
+		for (int i = 0; i < length; i += 1) {
+			char c = value.charAt(i);
+			if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') {
+				continue;
+			}
+
+			// copy the run of characters which need no escaping in one go
+			builder.append(value, runStart, i);
+			runStart = i + 1;
+
+			switch (c) {
+				case '"': builder.append("\\\""); break;
+				case '\\': builder.append("\\\\"); break;
+				case '\n': builder.append("\\n"); break;
+				case '\r': builder.append("\\r"); break;
+				case '\t': builder.append("\\t"); break;
+				case '\b': builder.append("\\b"); break;
+				case '\f': builder.append("\\f"); break;
+				default:
+					// other control characters, and the line and paragraph separators which end JavaScript string literals
+					builder.append("\\u")
+							.append(HEX_DIGITS[(c >> 12) & 0xf])
+							.append(HEX_DIGITS[(c >> 8) & 0xf])
+							.append(HEX_DIGITS[(c >> 4) & 0xf])
+							.append(HEX_DIGITS[c & 0xf]);
+			}
+		}
+		builder.append(value, runStart, length);
+		builder.append('"');
+	}
+}
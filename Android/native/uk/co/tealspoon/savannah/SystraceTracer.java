@@ -0,0 +1,60 @@
+package uk.co.tealspoon.savannah;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * A {@link uk.co.tealspoon.savannah.Tracer Tracer} which writes sections to the system trace, for viewing in systrace or Perfetto.
+ * Sections are recorded on Jelly Bean MR2 (18) and later, and asynchronous sections on Android 10 (29) and later. Before Android 10,
+ * the app cannot tell whether the system is tracing, so section names are built for every command.
+ */
+public class SystraceTracer implements Tracer {
+
+	// the system trace truncates longer names
+	private static final int MAX_SECTION_NAME_LENGTH = 127;
+
+	@Override
+	public boolean isEnabled() {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+			return Trace.isEnabled();
+		}
+		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+	}
+
+	@Override
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+	public void beginSection(String name) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+			Trace.beginSection(truncate(name));
+		}
+	}
+
+	@Override
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+	public void endSection() {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+			Trace.endSection();
+		}
+	}
+
+	@Override
+	@TargetApi(Build.VERSION_CODES.Q)
+	public void beginAsyncSection(String name, int cookie) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+			Trace.beginAsyncSection(truncate(name), cookie);
+		}
+	}
+
+	@Override
+	@TargetApi(Build.VERSION_CODES.Q)
+	public void endAsyncSection(String name, int cookie) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+			Trace.endAsyncSection(truncate(name), cookie);
+		}
+	}
+
+	private static String truncate(String name) {
+		return name.length() > MAX_SECTION_NAME_LENGTH ? name.substring(0, MAX_SECTION_NAME_LENGTH) : name;
+	}
+}
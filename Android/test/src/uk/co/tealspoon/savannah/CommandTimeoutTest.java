@@ -0,0 +1,79 @@
+package uk.co.tealspoon.savannah;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class CommandTimeoutTest {
+
+	private static final int LEADER_TIMEOUT = 20;
+	private static final int FOLLOWER_TIMEOUT = 60000;
+
+	@Test
+	public void expiredCommandsFailWithTimeout() throws InterruptedException {
+		HoldingPlugin plugin = new HoldingPlugin();
+		TestWebView webView = new TestWebView();
+		webView.createManager(plugin);
+
+		webView.exec("[[1,\"" + HoldingPlugin.NAME + "\",\"hold\",[],null," + LEADER_TIMEOUT + "]]");
+		Thread.sleep(2 * LEADER_TIMEOUT);
+		webView.runUiThread();
+
+		assertTrue(isTimeout(webView.getScriptsFor(1)));
+	}
+
+	@Test
+	public void followerWithLongerDeadlineOutlivesLeader() throws InterruptedException {
+		HoldingPlugin plugin = new HoldingPlugin();
+		TestWebView webView = new TestWebView();
+		webView.createManager(plugin);
+
+		// identical calls, the second of which may wait longer than the first
+		webView.exec("[[1,\"" + HoldingPlugin.NAME + "\",\"hold\",[],null," + LEADER_TIMEOUT + "],"
+				+ "[2,\"" + HoldingPlugin.NAME + "\",\"hold\",[],null," + FOLLOWER_TIMEOUT + "]]");
+		Thread.sleep(2 * LEADER_TIMEOUT);
+		webView.runUiThread();
+
+		assertTrue(isTimeout(webView.getScriptsFor(1)));
+		assertTrue(webView.getScriptsFor(2).isEmpty());
+
+		List<Command> commands = plugin.getCommands();
+		assertEquals(2, commands.size());
+		commands.get(1).success("done");
+		webView.runUiThread();
+
+		List<String> followerScripts = webView.getScriptsFor(2);
+		assertEquals(1, followerScripts.size());
+		assertFalse(isTimeout(followerScripts));
+		assertTrue(followerScripts.get(0).contains("\"done\""));
+	}
+
+	@Test
+	public void followerWithoutDeadlineOutlivesLeader() throws InterruptedException {
+		HoldingPlugin plugin = new HoldingPlugin();
+		TestWebView webView = new TestWebView();
+		webView.createManager(plugin);
+
+		webView.exec("[[1,\"" + HoldingPlugin.NAME + "\",\"hold\",[],null," + LEADER_TIMEOUT + "],"
+				+ "[2,\"" + HoldingPlugin.NAME + "\",\"hold\",[]]]");
+		Thread.sleep(2 * LEADER_TIMEOUT);
+		webView.runUiThread();
+
+		assertTrue(isTimeout(webView.getScriptsFor(1)));
+		assertTrue(webView.getScriptsFor(2).isEmpty());
+		assertEquals(2, plugin.getCommands().size());
+	}
+
+	private static boolean isTimeout(List<String> scripts) {
+		for (String script : scripts) {
+			if (script.contains("\"Timeout\"")) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,51 @@
+package uk.co.tealspoon.savannah;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A CoalescingPlugin which keeps the Command for each call to its hold method without sending a result, so that a test can finish
+ * the calls itself.
+ */
+final class HoldingPlugin implements CoalescingPlugin {
+
+	static final String NAME = "uk.co.tealspoon.savannah.test.holding";
+
+	private static final List<String> methods = Arrays.asList("hold");
+
+	private final List<Command> commands = new ArrayList<Command>();
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public Collection<String> getMethods() {
+		return methods;
+	}
+
+	@Override
+	public boolean isCoalescing(String action) {
+		return true;
+	}
+
+	@Override
+	public synchronized boolean execute(String action, Command command) {
+		if (action.equals("hold")) {
+			commands.add(command);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the Commands which have been executed, in order.
+	 * @return the Commands.
+	 */
+	synchronized List<Command> getCommands() {
+		return new ArrayList<Command>(commands);
+	}
+}
@@ -0,0 +1,51 @@
+package uk.co.tealspoon.savannah;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class ResultBatchingTest {
+
+	private static final int CHUNK_SIZE = 100;
+	private static final int STREAM_LENGTH = 1000;
+
+	@Test
+	public void streamedResultsAreSentInBoundedBatches() {
+		TestWebView webView = new TestWebView();
+		WebViewManager manager = webView.createManager(new StreamingPlugin(STREAM_LENGTH));
+		manager.setResultChunkSize(CHUNK_SIZE);
+		manager.setResultBatchingWindow(1000);
+
+		webView.exec("[[1,\"" + StreamingPlugin.NAME + "\",\"stream\",[]]]");
+		webView.runUiThread();
+
+		List<String> scripts = webView.getScripts();
+		int streamedLength = 0;
+		for (String script : scripts) {
+			// each batch holds about a chunk's worth of results, plus the script around them
+			assertTrue("Batch of " + script.length() + " characters", script.length() < 2 * CHUNK_SIZE);
+			for (int i = 0; i < script.length(); i++) {
+				if (script.charAt(i) == '0') {
+					streamedLength++;
+				}
+			}
+		}
+		assertEquals(STREAM_LENGTH, streamedLength);
+		assertTrue("Sent in " + scripts.size() + " batches", scripts.size() >= STREAM_LENGTH / CHUNK_SIZE);
+	}
+
+	@Test
+	public void smallResultsAreBatchedTogether() {
+		TestWebView webView = new TestWebView();
+		WebViewManager manager = webView.createManager(new StreamingPlugin(1));
+		manager.setResultBatchingWindow(1000);
+
+		webView.exec("[[1,\"" + StreamingPlugin.NAME + "\",\"stream\",[]],[2,\"" + StreamingPlugin.NAME + "\",\"stream\",[]]]");
+		webView.runUiThread();
+
+		assertEquals(1, webView.getScripts().size());
+	}
+}
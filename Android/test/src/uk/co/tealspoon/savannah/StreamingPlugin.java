@@ -0,0 +1,58 @@
+package uk.co.tealspoon.savannah;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A Plugin whose stream method writes a JSON array of zeros to a ResultStream.
+ */
+final class StreamingPlugin implements Plugin {
+
+	static final String NAME = "uk.co.tealspoon.savannah.test.streaming";
+
+	private static final List<String> methods = Arrays.asList("stream");
+
+	private final int length;
+
+	/**
+	 * Creates a new StreamingPlugin.
+	 * @param length the number of zeros in the array written by the stream method.
+	 */
+	StreamingPlugin(int length) {
+		this.length = length;
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public Collection<String> getMethods() {
+		return methods;
+	}
+
+	@Override
+	public boolean execute(String action, Command command) {
+		if (!action.equals("stream")) {
+			return false;
+		}
+
+		Writer writer = command.openResultStream();
+		try {
+			writer.write('[');
+			for (int i = 0; i < length; i++) {
+				writer.write(i == 0 ? "0" : ",0");
+			}
+			writer.write(']');
+			writer.close();
+		}
+		catch (IOException e) {
+			command.error(e.getMessage());
+		}
+		return true;
+	}
+}
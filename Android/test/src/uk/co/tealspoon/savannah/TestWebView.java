@@ -0,0 +1,147 @@
+package uk.co.tealspoon.savannah;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.json.JSONObject;
+
+import android.app.Activity;
+import android.os.Looper;
+import android.webkit.ValueCallback;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+/**
+ * A WebView which stands in for the page on the JVM. It finishes loading when asked, calls the JavaScript interface the way the page
+ * would, and records the scripts that the manager evaluates instead of running them.
+ */
+final class TestWebView extends WebView {
+
+	private static final String URL = "file:///android_asset/www/index.html";
+
+	private final Activity activity;
+	private WebViewClient client;
+	private String url;
+	private Object javascriptInterface;
+	private final List<String> scripts = new ArrayList<String>();
+
+	/**
+	 * Creates a new TestWebView.
+	 */
+	TestWebView() {
+		this(new Activity());
+	}
+
+	private TestWebView(Activity activity) {
+		super(activity);
+		this.activity = activity;
+	}
+
+	/**
+	 * Creates a WebViewManager for this WebView which provides the given Plugins and runs their commands straight away on the calling
+	 * thread, and finishes loading the page.
+	 * @param plugins the Plugins to provide.
+	 * @return the WebViewManager.
+	 */
+	WebViewManager createManager(Plugin... plugins) {
+		WebViewManager manager;
+		try {
+			manager = new WebViewManager("test", this, activity, new JSONObject(), Arrays.asList(plugins), new URL(URL));
+		}
+		catch (MalformedURLException e) {
+			throw new IllegalStateException(e);
+		}
+		manager.setDefaultExecutor(new Executor() {
+			public void execute(Runnable command) {
+				command.run();
+			}
+		});
+		client.onPageFinished(this, url);
+		runUiThread();
+		scripts.clear();
+		return manager;
+	}
+
+	@Override
+	public void addJavascriptInterface(Object object, String name) {
+		if (name.equals("savannahJSI")) {
+			javascriptInterface = object;
+		}
+	}
+
+	@Override
+	public void setWebViewClient(WebViewClient client) {
+		this.client = client;
+	}
+
+	@Override
+	public void loadUrl(String url) {
+		this.url = url;
+	}
+
+	@Override
+	public void evaluateJavascript(String script, ValueCallback<String> resultCallback) {
+		synchronized (scripts) {
+			scripts.add(script);
+		}
+	}
+
+	/**
+	 * Sends a batch of commands to the manager through its JavaScript interface. The WebView calls the interface by reflection too.
+	 * @param commands a JSON array of commands.
+	 */
+	void exec(String commands) {
+		try {
+			Method exec = javascriptInterface.getClass().getMethod("exec", String.class);
+			exec.setAccessible(true);
+			exec.invoke(javascriptInterface, commands);
+		}
+		catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+		catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+		catch (InvocationTargetException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Runs everything waiting on the UI thread's queue, such as scheduled flushes of batched results.
+	 */
+	void runUiThread() {
+		Looper.getMainLooper().runPending();
+	}
+
+	/**
+	 * Returns the scripts evaluated so far, in order.
+	 * @return the scripts.
+	 */
+	List<String> getScripts() {
+		synchronized (scripts) {
+			return new ArrayList<String>(scripts);
+		}
+	}
+
+	/**
+	 * Returns the scripts evaluated so far which pass results to the given callback.
+	 * @param callbackId the callback ID.
+	 * @return the scripts.
+	 */
+	List<String> getScriptsFor(int callbackId) {
+		List<String> callbackScripts = new ArrayList<String>();
+		for (String script : getScripts()) {
+			if (script.contains("(" + callbackId + ",") || script.contains("[" + callbackId + ",")) {
+				callbackScripts.add(script);
+			}
+		}
+		return callbackScripts;
+	}
+}
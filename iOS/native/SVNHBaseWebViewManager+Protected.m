@@ -108,7 +108,7 @@
 
     NSString *stringStatus = status ? @"true" : @"false";
 
-    NSString *execString = [NSString stringWithFormat:@"window.savannah._callback('%@',%@,%@,%d);",
+    NSString *execString = [NSString stringWithFormat:@"window.savannah._callback(%@,%@,%@,%d);",
                             callbackId,
                             stringStatus,
                             message,
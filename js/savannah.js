@@ -2,32 +2,104 @@
     "use strict";
     var version = "0.13.0";
 
-    // calls fn on the leading edge and, if called again,
-    // the trailing edge, of the debounce window.
-    var debounce = function(fn, wait) {
-        var timeout,
-            didCallAgain,
-            later;
-
-        later = function() {
-            if (didCallAgain) {
-                fn();
-            }
-            timeout = null;
-            didCallAgain = false;
+    // returns a function which schedules a call to send, adapting to the rate of calls.
+    // an isolated call is sent as soon as the current task ends, so that it doesn't wait
+    // on a timer. calls which arrive in quick succession are batched, until the batch
+    // reaches maxBatchSize commands or maxBatchDelay ms have passed. send returns true if
+    // the native app reported that it is saturated, false if it is not, and undefined if
+    // there was nothing to send; while the native app is saturated, sends back off
+    // exponentially so that commands collect into fewer, larger batches until it recovers.
+    // an urgent call is sent as soon as the current task ends, whatever the rate of calls,
+    // taking any other waiting calls with it.
+    var adaptiveScheduler = function(send, getQueueLength, Promise) {
+        var burstInterval = 4,
+            maxBatchDelay = 16,
+            maxBatchSize = 64,
+            minBackoff = 8,
+            maxBackoff = 256,
+            backoff = 0,
+            lastSendTime = 0,
+            isScheduled = false,
+            timeout = null,
+            flush,
+            flushSoon;
+
+        flush = function() {
+            var isSaturated;
+            if (!isScheduled) {
+                return;
+            }
+            isScheduled = false;
+            if (timeout !== null) {
+                clearTimeout(timeout);
+                timeout = null;
+            }
+            isSaturated = send();
+            lastSendTime = Date.now();
+            if (isSaturated !== undefined) {
+                backoff = isSaturated ? Math.min(Math.max(backoff * 2, minBackoff), maxBackoff) : 0;
+            }
         };
 
-        return function() {
-            if (!timeout) {
-                timeout = setTimeout(later, wait);
-                setTimeout(fn, 0);
+        flushSoon = function() {
+            Promise.resolve().then(flush);
+        };
+
+        return function(isUrgent) {
+            if (isScheduled) {
+                // send urgent calls now, and don't let a batch grow without bound unless the native app is saturated
+                if (timeout !== null && (isUrgent || (!backoff && getQueueLength() >= maxBatchSize))) {
+                    clearTimeout(timeout);
+                    timeout = null;
+                    flushSoon();
+                }
+                return;
+            }
+            isScheduled = true;
+            if (isUrgent) {
+                flushSoon();
+            }
+            else if (backoff) {
+                timeout = setTimeout(flush, backoff);
+            }
+            else if (Date.now() - lastSendTime < burstInterval) {
+                timeout = setTimeout(flush, maxBatchDelay);
             }
             else {
-                didCallAgain = true;
+                flushSoon();
             }
         };
     };
 
+    // the key of the placeholder objects which stand in for binary arguments and results
+    var binaryKey = "$svnhBinary";
+
+    // the messages used to set up a message port for results with the native app
+    var portMessage = "savannah:port",
+        portReadyMessage = "savannah:ready";
+
+    // the name of the native plugin which manages event stream subscriptions
+    var eventsPluginName = "savannah.events";
+
+    // the name of the native plugin which cancels commands
+    var commandsPluginName = "savannah.commands";
+
+    // the reason with which the promises of cancelled calls are rejected
+    var cancelledReason = "Cancelled";
+
+    // the reason with which the promises of calls which time out are rejected
+    var timeoutReason = "Timeout";
+
+    // the maximum number of plugin results cached in the page
+    var maxCachedResults = 256;
+
+    // the priorities of commands, as sent to the native app
+    var priorities = {
+        low: 0,
+        normal: 1,
+        high: 2
+    };
+
     var Savannah = function (window) {
         var publicAPI = this,
 
@@ -40,9 +112,45 @@
             // a container for progress callbacks
             progressCallbacks = {},
 
+            // a container for the chunks received so far of streamed results
+            resultChunks = {},
+
+            // a container for the subscriptions to each event stream
+            subscriptions = {},
+
+            // a hash of "plugin\0method" to the time to live, in ms, of the cached results of the method
+            cachePolicies = {},
+
+            // a hash of cache keys to cached results, as JSON, and the times at which they expire
+            cachedResults = {},
+
+            // the keys of cachedResults, oldest first
+            cachedResultKeys = [],
+
+            // a hash of callback IDs to the cache keys and times to live of calls whose results will be cached
+            pendingCacheKeys = {},
+
+            // a hash of "plugin\0method" to the priorities of methods which don't have normal priority
+            methodPriorities = {},
+
+            // the priority set by withPriority for the calls being made, if any
+            currentPriority,
+
+            // the timeout in milliseconds set by withTimeout for the calls being made, if any
+            currentTimeout,
+
             // a list of pending JS->Native messages.
             commandQueue = [],
 
+            // the binary arguments of the pending messages, as strings with one character per byte
+            binaryQueue = [],
+
+            // the total length of the strings in binaryQueue
+            binaryQueueLength = 0,
+
+            // the placeholders which refer to the strings in binaryQueue, in the same order
+            binaryPlaceholders = [],
+
             // a container for plugins
             plugins = {},
 
@@ -55,35 +163,68 @@
             // keeps track of whether load is finished
             isLoadFinished = false,
 
+            // the port on which the native app sends results, if any
+            resultPort,
+
             // functions
             notifyNative,
             setNotifyNative,
+            isBinary,
+            queueBinary,
+            removeQueuedCommand,
+            bytes,
             exec,
+            cancel,
             fetchMessages,
             notifyProgress,
             callback,
+            batchCallback,
+            rethrowLater,
+            updateSubscription,
+            subscribe,
+            withPriority,
+            withTimeout,
+            canonicalJSON,
+            cacheKey,
+            cacheResult,
+            invalidate,
+            dispatchEvents,
+            listenForResultPort,
             pluginMethod,
             registerPlugin,
             didFinishLoad,
             ready,
             alias,
-            getIsLoadFinished;
+            getIsLoadFinished,
+            bootstrap;
 
         // notify the native app that there are commands waiting
         // send the command data if possible to avoid a round trip
         setNotifyNative = function() {
-            notifyNative = debounce((function() {
+            notifyNative = adaptiveScheduler((function() {
                 if (window.savannahJSI) {
                     // Android
+                    // the native app returns a non-empty value from exec
+                    // when its command backlog is over its limit
                     return function() {
-                        var commands;
+                        var commands,
+                            binary;
                         if (commandQueue.length) {
                             // there could be inconsistency if _fetchMessages is called
                             // on exec before we clear the command queue, so clear the
                             // queue first
                             commands = JSON.stringify(commandQueue);
                             commandQueue.length = 0;
-                            window.savannahJSI.exec(commands);
+                            if (binaryQueueLength) {
+                                // binary arguments travel alongside the batch rather than inside it,
+                                // so that they don't need to be escaped
+                                binary = binaryQueue.join("");
+                                binaryQueue.length = 0;
+                                binaryPlaceholders.length = 0;
+                                binaryQueueLength = 0;
+                                return !!window.savannahJSI.execWithBinary(commands, binary);
+                            }
+                            return !!window.savannahJSI.exec(commands);
                         }
                     };
                 }
@@ -96,6 +237,7 @@
                             commands = commandQueue.slice();
                             commandQueue.length = 0;
                             window.webkit.messageHandlers.savannahJSI.postMessage(commands);
+                            return false;
                         }
                     };
                 }
@@ -104,10 +246,90 @@
                     return function() {
                         if (commandQueue.length) {
                             window.location = "/!svnh_exec?";
+                            return false;
                         }
                     };
                 }
-            }()), 20);
+            }()), function() {
+                return commandQueue.length;
+            }, window.Promise);
+        };
+
+        // returns true if the given value is an ArrayBuffer or a view onto one, such as a Uint8Array
+        isBinary = function(value) {
+            return !!(value && window.ArrayBuffer && (value instanceof window.ArrayBuffer ||
+                (window.ArrayBuffer.isView ? window.ArrayBuffer.isView(value) : value.buffer instanceof window.ArrayBuffer)));
+        };
+
+        // add the given binary value to the binary queue, and return a placeholder which refers to it
+        queueBinary = function(value) {
+            var byteArray = value instanceof window.ArrayBuffer ?
+                    new window.Uint8Array(value) :
+                    new window.Uint8Array(value.buffer, value.byteOffset, value.byteLength),
+                chunkSize = 0x8000,
+                chunks = [],
+                placeholder = {},
+                i;
+
+            // convert in chunks to stay within the engine's limit on the number of arguments
+            for (i = 0; i < byteArray.length; i += chunkSize) {
+                chunks.push(String.fromCharCode.apply(null, byteArray.subarray(i, i + chunkSize)));
+            }
+
+            placeholder[binaryKey] = [binaryQueueLength, byteArray.length];
+            binaryQueue.push(chunks.join(""));
+            binaryPlaceholders.push(placeholder);
+            binaryQueueLength += byteArray.length;
+            return placeholder;
+        };
+
+        // remove the command with the given callback ID from the queue, along with its binary arguments.
+        // the binary arguments of the other commands move up to fill the gap, so their placeholders are updated.
+        // returns true if the command was still queued
+        removeQueuedCommand = function(id) {
+            var command,
+                args,
+                offset = 0,
+                i;
+
+            for (i = 0; i < commandQueue.length; i += 1) {
+                if (commandQueue[i][0] === id) {
+                    command = commandQueue.splice(i, 1)[0];
+                    break;
+                }
+            }
+            if (!command) {
+                return false;
+            }
+
+            args = command[3];
+            if (binaryQueueLength && args && args.length) {
+                i = 0;
+                while (i < binaryQueue.length) {
+                    if (args.indexOf(binaryPlaceholders[i]) !== -1) {
+                        binaryQueueLength -= binaryQueue[i].length;
+                        binaryQueue.splice(i, 1);
+                        binaryPlaceholders.splice(i, 1);
+                    }
+                    else {
+                        binaryPlaceholders[i][binaryKey][0] = offset;
+                        offset += binaryQueue[i].length;
+                        i += 1;
+                    }
+                }
+            }
+            return true;
+        };
+
+        // turn a binary result, a string with one character per byte, into a Uint8Array
+        bytes = function(string) {
+            var byteArray = new window.Uint8Array(string.length),
+                i;
+
+            for (i = 0; i < string.length; i += 1) {
+                byteArray[i] = string.charCodeAt(i);
+            }
+            return byteArray;
         };
 
         // IIFE; returns a function which is the entry point for all plugin execution
@@ -129,11 +351,14 @@
             return function(successCallback, failCallback, service, action, actionArgs) {
                 var tmpService,
                     command,
-                    promise;
-
-                if (!isLoadFinished) {
-                    throw "Unable to execute plugin before Savannah is ready.";
-                }
+                    promise,
+                    handle,
+                    isTracked,
+                    id = callbackId,
+                    isCopied = false,
+                    key,
+                    cached,
+                    i;
 
                 // exec can be called with or without leading success/fail params.
                 // if the first param is a string, there were no success/fail params.
@@ -151,7 +376,7 @@
                     });
 
                     promise.progress = function(callback) {
-                        promiseProgress(callbackId, callback);
+                        promiseProgress(id, callback);
                         return this;
                     };
                 }
@@ -163,23 +388,146 @@
                     };
                 }
 
+                // the call can be cancelled through its promise, or through the object returned for calls with callbacks
+                isTracked = !!(promise || successCallback || failCallback);
+                handle = promise || {};
+                handle.cancel = function() {
+                    cancel(id, isTracked);
+                };
+
+                // binary arguments can only be sent to Android
+                if (window.savannahJSI && actionArgs && actionArgs.length) {
+                    for (i = 0; i < actionArgs.length; i += 1) {
+                        if (isBinary(actionArgs[i])) {
+                            // don't modify the caller's array
+                            if (!isCopied) {
+                                actionArgs = actionArgs.slice();
+                                isCopied = true;
+                            }
+                            actionArgs[i] = queueBinary(actionArgs[i]);
+                        }
+                    }
+                }
+
+                // calls to methods whose results the native app lets the page cache may be answered without reaching it
+                key = isCopied ? undefined : cacheKey(service, action, actionArgs);
+                if (key !== undefined) {
+                    cached = cachedResults[key];
+                    if (cached && cached.expiry > Date.now()) {
+                        callbackId = callbackId < 0x7fffffff ? callbackId + 1 : 1;
+                        // the native app never sees the call, so it is cancelled here
+                        handle.cancel = function() {
+                            cancel(id, isTracked, true);
+                        };
+                        setTimeout(function() {
+                            callback(id, true, JSON.parse(cached.json), false);
+                        }, 0);
+                        return handle;
+                    }
+                    pendingCacheKeys[id] = {
+                        key: key,
+                        ttl: cachePolicies[service + "\0" + action]
+                    };
+                }
+
                 command = [callbackId, service, action, actionArgs];
 
-                callbackId += 1;
+                // a priority set by the page is sent, so that it overrides the method's priority natively.
+                // the priority is also kept as a property of the array, which JSON.stringify ignores
+                if (currentPriority !== undefined) {
+                    command.push(currentPriority);
+                    command.priority = currentPriority;
+                }
+                else if (Object.prototype.hasOwnProperty.call(methodPriorities, service + "\0" + action)) {
+                    command.priority = methodPriorities[service + "\0" + action];
+                }
+                else {
+                    command.priority = priorities.normal;
+                }
+
+                // a timeout is sent relative to now, as the native app's clock differs from the page's.
+                // it follows the priority, which is null if the page set none
+                if (currentTimeout !== undefined) {
+                    if (currentPriority === undefined) {
+                        command.push(null);
+                    }
+                    command.push(currentTimeout);
 
-                commandQueue.push(command);
+                    // the call fails here too, in case it is still waiting to be sent or its timeout error is delayed
+                    if (isTracked && currentTimeout > 0) {
+                        setTimeout(function() {
+                            if (!callbacks[id] && !promises[id]) {
+                                return;
+                            }
+                            removeQueuedCommand(id);
+                            callback(id, false, timeoutReason, false);
+                        }, currentTimeout);
+                    }
+                }
 
-                notifyNative();
+                // callback IDs are sent as numbers and stored natively as 32-bit ints, so wrap before they overflow
+                callbackId = callbackId < 0x7fffffff ? callbackId + 1 : 1;
 
-                return promise;
+                // keep the queue in order of priority, and in the order of calls within each priority
+                i = commandQueue.length;
+                while (i > 0 && commandQueue[i - 1].priority < command.priority) {
+                    i -= 1;
+                }
+                commandQueue.splice(i, 0, command);
+
+                // commands made before Savannah is ready are sent once it is
+                if (isLoadFinished) {
+                    notifyNative(command.priority > priorities.normal);
+                }
+
+                return handle;
             };
         }());
 
+        // cancel the call with the given callback ID. its callbacks are discarded and its promise is rejected.
+        // a call which hasn't been sent yet is dropped; otherwise the native app is asked to stop it.
+        // isTracked is true if the call has callbacks or a promise, which are discarded once it completes.
+        // isLocal is true if the call is answered by the page, so the native app doesn't need to be told
+        cancel = function(id, isTracked, isLocal) {
+            var promise = promises[id];
+
+            if (isTracked && !promise && !callbacks[id]) {
+                // the call has already completed
+                return;
+            }
+
+            delete callbacks[id];
+            delete promises[id];
+            delete progressCallbacks[id];
+            delete resultChunks[id];
+            delete pendingCacheKeys[id];
+
+            if (promise) {
+                promise.reject(cancelledReason);
+            }
+
+            if (isLocal || removeQueuedCommand(id)) {
+                return;
+            }
+
+            // only Android has the plugin which cancels commands; elsewhere the call's results are ignored
+            if (!window.savannahJSI) {
+                return;
+            }
+
+            withPriority("high", function() {
+                exec(null, null, commandsPluginName, "cancel", [id]);
+            });
+        };
+
         // let the native app pull commands
         fetchMessages = function() {
             // Each entry in commandQueue is a JSON string already.
             var json = JSON.stringify(commandQueue);
             commandQueue.length = 0;
+            binaryQueue.length = 0;
+            binaryPlaceholders.length = 0;
+            binaryQueueLength = 0;
             return json;
         };
 
@@ -193,10 +541,49 @@
             }
         };
 
-        // called when a response (success, fail or progress) is returned from the native app
-        callback = function(callbackId, success, args, keepCallback) {
+        // called when a response (success, fail or progress) is returned from the native app.
+        // if isChunk is true, args is part of the JSON representation of a streamed result,
+        // which is only delivered once the last chunk (where keepCallback is false) arrives
+        callback = function(callbackId, success, args, keepCallback, isChunk) {
             var callback = callbacks[callbackId],
-                promise = promises[callbackId];
+                promise = promises[callbackId],
+                chunks = resultChunks[callbackId],
+                text;
+
+            if (isChunk) {
+                if (!chunks) {
+                    chunks = (resultChunks[callbackId] = []);
+                }
+                chunks.push(args);
+                if (keepCallback) {
+                    return;
+                }
+
+                text = chunks.join("");
+                try {
+                    args = text ? JSON.parse(text) : null;
+                }
+                catch (e) {
+                    success = false;
+                    args = e;
+                }
+            }
+
+            if (chunks && !keepCallback) {
+                // discard the partial result if the stream ended in an error
+                delete resultChunks[callbackId];
+            }
+
+            if (!keepCallback && pendingCacheKeys[callbackId]) {
+                if (success) {
+                    cacheResult(pendingCacheKeys[callbackId], args);
+                }
+                delete pendingCacheKeys[callbackId];
+            }
+
+            if (args && typeof args[binaryKey] === "string") {
+                args = bytes(args[binaryKey]);
+            }
 
             if (callback) {
                 if (success && callback.success) {
@@ -223,6 +610,259 @@
             }
         };
 
+        // call fn, giving the calls it makes synchronously the named priority: "low", "normal" or "high".
+        // returns the value returned by fn
+        withPriority = function(priority, fn) {
+            var previousPriority = currentPriority;
+
+            if (!Object.prototype.hasOwnProperty.call(priorities, priority)) {
+                throw "Unknown priority \"" + priority + "\".";
+            }
+
+            currentPriority = priorities[priority];
+            try {
+                return fn();
+            }
+            finally {
+                currentPriority = previousPriority;
+            }
+        };
+
+        // call fn, giving the calls it makes synchronously a timeout in milliseconds. a call which hasn't
+        // completed by then fails with "Timeout". a timeout of 0 means the calls have no timeout, even if
+        // their methods have one natively. returns the value returned by fn
+        withTimeout = function(timeoutMillis, fn) {
+            var previousTimeout = currentTimeout;
+
+            if (typeof timeoutMillis !== "number" || !(timeoutMillis >= 0) || timeoutMillis > 0x7fffffff) {
+                throw "Invalid timeout \"" + timeoutMillis + "\".";
+            }
+
+            currentTimeout = Math.floor(timeoutMillis);
+            try {
+                return fn();
+            }
+            finally {
+                currentTimeout = previousTimeout;
+            }
+        };
+
+        // returns JSON for the given value with the keys of objects sorted, so that equal arguments
+        // give equal cache keys however they were built
+        canonicalJSON = function(value) {
+            var keys,
+                parts,
+                i;
+
+            if (Array.isArray(value)) {
+                parts = [];
+                for (i = 0; i < value.length; i += 1) {
+                    parts.push(value[i] === undefined ? "null" : canonicalJSON(value[i]));
+                }
+                return "[" + parts.join(",") + "]";
+            }
+            if (value && typeof value === "object" && typeof value.toJSON !== "function") {
+                keys = Object.keys(value).sort();
+                parts = [];
+                for (i = 0; i < keys.length; i += 1) {
+                    if (value[keys[i]] !== undefined) {
+                        parts.push(JSON.stringify(keys[i]) + ":" + canonicalJSON(value[keys[i]]));
+                    }
+                }
+                return "{" + parts.join(",") + "}";
+            }
+            return JSON.stringify(value);
+        };
+
+        // returns the key of the cached result of a call, or undefined if its results aren't cached in the page
+        cacheKey = function(service, action, actionArgs) {
+            if (!Object.prototype.hasOwnProperty.call(cachePolicies, service + "\0" + action)) {
+                return undefined;
+            }
+            return service + "\0" + action + "\0" + canonicalJSON(actionArgs || []);
+        };
+
+        // cache the final successful result of a call. binary results aren't cached
+        cacheResult = function(pending, args) {
+            if (args && typeof args[binaryKey] === "string") {
+                return;
+            }
+            if (!Object.prototype.hasOwnProperty.call(cachedResults, pending.key)) {
+                cachedResultKeys.push(pending.key);
+                if (cachedResultKeys.length > maxCachedResults) {
+                    delete cachedResults[cachedResultKeys.shift()];
+                }
+            }
+            cachedResults[pending.key] = {
+                json: JSON.stringify(args === undefined ? null : args),
+                expiry: Date.now() + pending.ttl
+            };
+        };
+
+        // called by the native app to discard the cached results of a plugin, or of one of its methods
+        invalidate = function(pluginName, methodName) {
+            var prefix = pluginName + "\0" + (methodName ? methodName + "\0" : ""),
+                callbackIds = Object.keys(pendingCacheKeys),
+                i;
+
+            for (i = cachedResultKeys.length - 1; i >= 0; i -= 1) {
+                if (cachedResultKeys[i].indexOf(prefix) === 0) {
+                    delete cachedResults[cachedResultKeys[i]];
+                    cachedResultKeys.splice(i, 1);
+                }
+            }
+
+            // results already on their way may be stale
+            for (i = 0; i < callbackIds.length; i += 1) {
+                if (pendingCacheKeys[callbackIds[i]].key.indexOf(prefix) === 0) {
+                    delete pendingCacheKeys[callbackIds[i]];
+                }
+            }
+        };
+
+        // called when a batch of responses is returned from the native app.
+        // each response is an array of the arguments to callback
+        batchCallback = function(results) {
+            var i;
+
+            for (i = 0; i < results.length; i += 1) {
+                // an exception in one handler must not prevent the rest of the batch from being delivered
+                try {
+                    callback.apply(null, results[i]);
+                }
+                catch (e) {
+                    rethrowLater(e);
+                }
+            }
+        };
+
+        // report an exception without interrupting the caller
+        rethrowLater = function(e) {
+            setTimeout(function() {
+                throw e;
+            }, 0);
+        };
+
+        // tell the native app what the subscribers to the named stream need: the shortest interval
+        // any of them asked for, and whether all of them are happy to receive only the latest value
+        updateSubscription = function(name) {
+            var streamSubscriptions = subscriptions[name],
+                interval = Infinity,
+                conflate = true,
+                i;
+
+            // only Android has the plugin which manages event streams, so elsewhere subscriptions receive no events
+            if (!streamSubscriptions || !streamSubscriptions.length) {
+                delete subscriptions[name];
+                if (window.savannahJSI) {
+                    exec(null, null, eventsPluginName, "unsubscribe", [name]);
+                }
+                return;
+            }
+            if (!window.savannahJSI) {
+                return;
+            }
+
+            for (i = 0; i < streamSubscriptions.length; i += 1) {
+                interval = Math.min(interval, streamSubscriptions[i].interval);
+                conflate = conflate && streamSubscriptions[i].conflate;
+            }
+            exec(null, null, eventsPluginName, "subscribe", [name, {
+                interval: interval,
+                conflate: conflate
+            }]);
+        };
+
+        // subscribe to the named event stream. options may include interval, the minimum number of ms
+        // between deliveries of events from the stream, and conflate, which if true means that only the
+        // latest event published during each interval is delivered. returns an object with an
+        // unsubscribe method
+        subscribe = function(name, listener, options) {
+            var subscription = {
+                listener: listener,
+                interval: (options && options.interval) || 0,
+                conflate: !!(options && options.conflate)
+            },
+                isSubscribed = true;
+
+            if (!subscriptions[name]) {
+                subscriptions[name] = [];
+            }
+            subscriptions[name].push(subscription);
+            updateSubscription(name);
+
+            return {
+                unsubscribe: function() {
+                    var streamSubscriptions = subscriptions[name],
+                        index = streamSubscriptions ? streamSubscriptions.indexOf(subscription) : -1;
+
+                    if (isSubscribed) {
+                        isSubscribed = false;
+                        if (index !== -1) {
+                            streamSubscriptions.splice(index, 1);
+                        }
+                        updateSubscription(name);
+                    }
+                }
+            };
+        };
+
+        // called when events are delivered from the native app. each entry is an array of
+        // a stream name and the events published to that stream, in order
+        dispatchEvents = function(streams) {
+            var streamSubscriptions,
+                events,
+                i,
+                j,
+                k;
+
+            for (i = 0; i < streams.length; i += 1) {
+                // copy, so that listeners can unsubscribe while events are being delivered
+                streamSubscriptions = (subscriptions[streams[i][0]] || []).slice();
+                events = streams[i][1];
+                for (j = 0; j < events.length; j += 1) {
+                    if (events[j] && typeof events[j][binaryKey] === "string") {
+                        events[j] = bytes(events[j][binaryKey]);
+                    }
+                    for (k = 0; k < streamSubscriptions.length; k += 1) {
+                        try {
+                            streamSubscriptions[k].listener(events[j]);
+                        }
+                        catch (e) {
+                            rethrowLater(e);
+                        }
+                    }
+                }
+            }
+        };
+
+        // the native app may send a message port on which to send results, which is cheaper
+        // than evaluating a script for each result. acknowledge the port so that it's used
+        listenForResultPort = function(event) {
+            // messages from the native app have no source window
+            if (event.data === portMessage && !event.source && event.ports && event.ports[0]) {
+                if (resultPort) {
+                    resultPort.close();
+                }
+                resultPort = event.ports[0];
+                resultPort.onmessage = function(event) {
+                    var message = JSON.parse(event.data);
+                    // events arrive as an object, so that they can't be mistaken for results
+                    if (message && message.events) {
+                        dispatchEvents(message.events);
+                    }
+                    else {
+                        batchCallback(message);
+                    }
+                };
+                resultPort.postMessage(portReadyMessage);
+            }
+        };
+
+        if (window.addEventListener) {
+            window.addEventListener("message", listenForResultPort);
+        }
+
         pluginMethod = function(pluginName, methodName) {
             return function() {
                 var args = [Array.prototype.slice.call(arguments, 0)];
@@ -232,43 +872,96 @@
             };
         };
 
-        // called by the native app to register a plugin
+        // called by the native app to register a plugin. methods is an array of method names,
+        // or a comma-separated string of them. the plugin and its methods are only created
+        // when the plugin is first used, since most pages use only a few of their plugins.
+        // in the string, methods which don't have normal priority are followed by "!priority",
+        // and methods whose results the page may cache by "@ttl"
         registerPlugin = function(pluginName, methods) {
-            var plugin = {},
-                methodName,
+            var plugin,
+                descriptor,
+                separator,
+                ttl,
                 i;
-            
-            for (i = 0; i < methods.length; i += 1) {
-                methodName = methods[i];
-                plugin[methodName] = pluginMethod(pluginName, methodName);
+
+            if (typeof methods === "string" && (methods.indexOf("@") !== -1 || methods.indexOf("!") !== -1)) {
+                methods = methods.split(",");
+                for (i = 0; i < methods.length; i += 1) {
+                    separator = methods[i].indexOf("@");
+                    if (separator !== -1) {
+                        ttl = methods[i].slice(separator + 1);
+                        methods[i] = methods[i].slice(0, separator);
+                        cachePolicies[pluginName + "\0" + methods[i]] = ttl ? Number(ttl) : Infinity;
+                    }
+                    separator = methods[i].indexOf("!");
+                    if (separator !== -1) {
+                        methodPriorities[pluginName + "\0" + methods[i].slice(0, separator)] = Number(methods[i].slice(separator + 1));
+                        methods[i] = methods[i].slice(0, separator);
+                    }
+                }
             }
 
-            plugins[pluginName] = plugin;
-            
+            descriptor = {
+                get: function() {
+                    var j;
+
+                    if (!plugin) {
+                        if (typeof methods === "string") {
+                            methods = methods ? methods.split(",") : [];
+                        }
+                        plugin = {};
+                        for (j = 0; j < methods.length; j += 1) {
+                            plugin[methods[j]] = pluginMethod(pluginName, methods[j]);
+                        }
+                    }
+                    return plugin;
+                },
+                enumerable: true,
+                configurable: true
+            };
+
+            Object.defineProperty(plugins, pluginName, descriptor);
+
             if (aliases[pluginName]) {
                 for (i = 0; i < aliases[pluginName].length; i += 1) {
-                    plugins[aliases[pluginName][i]] = plugins[pluginName];
+                    Object.defineProperty(plugins, aliases[pluginName][i], descriptor);
                 }
             }
         };
 
         // expose a promise, ready, that resolves once didFinishLoad is called
         // didFinishLoad is called by the native app when the page load is complete,
-        // sending app-specific settings
+        // sending app-specific settings. the plugins are either an array of plugin names
+        // with an array of the methods of each, or a compact manifest string of the form
+        // "name:method,method;name:method"
         var ready = new window.Promise(function(resolve) {
             didFinishLoad = function(settings, plugins, pluginMethods) {
-                var i;
+                var separator,
+                    i;
 
                 if (!isLoadFinished) {
                     setNotifyNative();
                     isLoadFinished = true;
                     publicAPI.settings = settings;
-                    for (i = 0; i < plugins.length; i += 1) {
-                        registerPlugin(plugins[i], pluginMethods[i]);
+                    if (typeof plugins === "string") {
+                        plugins = plugins ? plugins.split(";") : [];
+                        for (i = 0; i < plugins.length; i += 1) {
+                            separator = plugins[i].indexOf(":");
+                            registerPlugin(plugins[i].slice(0, separator), plugins[i].slice(separator + 1));
+                        }
+                    }
+                    else {
+                        for (i = 0; i < plugins.length; i += 1) {
+                            registerPlugin(plugins[i], pluginMethods[i]);
+                        }
                     }
 
                     // the aliases hash is no longer required
                     aliases = undefined;
+
+                    if (commandQueue.length) {
+                        notifyNative(commandQueue[0].priority > priorities.normal);
+                    }
                 }
                 resolve();
             };
@@ -292,8 +985,8 @@
                     // if the plugin already exists, make alias point to it
                     // otherwise store the relation so we can make a reference once
                     // the plugins are ready
-                    if (plugins[name]) {
-                        plugins[alias] = plugins[name];
+                    if (Object.prototype.hasOwnProperty.call(plugins, name)) {
+                        Object.defineProperty(plugins, alias, Object.getOwnPropertyDescriptor(plugins, name));
                     }
                     else {
                         if (!aliases[name]) {
@@ -312,13 +1005,28 @@
             return isLoadFinished;
         };
 
+        // the Android native app can hand over the settings and plugins as soon as savannah.js runs,
+        // rather than waiting for the page to finish loading
+        if (window.savannahJSI && window.savannahJSI.bootstrap && window.location) {
+            bootstrap = window.savannahJSI.bootstrap(String(window.location.href));
+            if (bootstrap) {
+                didFinishLoad.apply(null, JSON.parse(bootstrap));
+            }
+        }
+
         publicAPI._fetchMessages = fetchMessages;
         publicAPI._callback = callback;
+        publicAPI._callbacks = batchCallback;
+        publicAPI._events = dispatchEvents;
+        publicAPI._invalidate = invalidate;
         publicAPI._didFinishLoad = didFinishLoad;
         publicAPI._getIsLoadFinished = getIsLoadFinished;
         publicAPI.alias = alias;
         publicAPI.ready = ready;
         publicAPI.exec = exec;
+        publicAPI.subscribe = subscribe;
+        publicAPI.withPriority = withPriority;
+        publicAPI.withTimeout = withTimeout;
         publicAPI.plugins = plugins;
         publicAPI.version = version;
     };
@@ -5,13 +5,16 @@ describe("Savannah", function() {
 
     (function() {
         var commonEnvironment = {
-            Promise: window.Promise
+            Promise: window.Promise,
+            ArrayBuffer: window.ArrayBuffer,
+            Uint8Array: window.Uint8Array
         };
 
         createAndroidInstance = function() {
             var environment = _.extend({
                 savannahJSI: {
-                    exec: jasmine.createSpy("exec")
+                    exec: jasmine.createSpy("exec"),
+                    execWithBinary: jasmine.createSpy("execWithBinary")
                 }
             }, commonEnvironment);
             var savannah = new window.savannah.constructor(environment);
@@ -174,6 +177,24 @@ describe("Savannah", function() {
         expect(androidSavannah.plugins.bar).toBe(androidSavannah.plugins.baz);
     });
 
+    it("should register plugins from a compact manifest when they are first used", function() {
+        androidSavannah.alias({
+            "com.example.foo": "foo"
+        });
+        androidSavannah._didFinishLoad({}, "com.example.foo:bar,baz;com.example.qux:");
+
+        expect(Object.keys(androidSavannah.plugins).sort()).toEqual(["com.example.foo", "com.example.qux", "foo"]);
+        expect(typeof androidSavannah.plugins.foo.bar).toBe("function");
+        expect(typeof androidSavannah.plugins.foo.baz).toBe("function");
+        expect(androidSavannah.plugins.foo).toBe(androidSavannah.plugins["com.example.foo"]);
+        expect(Object.keys(androidSavannah.plugins["com.example.qux"])).toEqual([]);
+
+        androidSavannah.alias({
+            "com.example.qux": "qux"
+        });
+        expect(androidSavannah.plugins.qux).toBe(androidSavannah.plugins["com.example.qux"]);
+    });
+
     it("should not have initial messages", function(done) {
         var settings = {};
         var plugins = [];
@@ -292,6 +313,35 @@ describe("Savannah", function() {
         checkLocation();
     });
 
+    it("should back off from exec while the native app is saturated", function(done) {
+        var settings = {};
+        var plugins = ["foo"];
+        var pluginMethods = [["bar"]];
+        var exec = androidEnvironment.savannahJSI.exec;
+
+        // report a saturated command backlog on the first exec only
+        exec.and.returnValues("100", null);
+
+        androidSavannah._didFinishLoad(settings, plugins, pluginMethods);
+        androidSavannah.ready.then(function() {
+            androidSavannah.plugins.foo.bar({});
+            setTimeout(function() {
+                expect(exec.calls.count()).toBe(1);
+                androidSavannah.plugins.foo.bar({});
+                androidSavannah.plugins.foo.bar({});
+                setTimeout(function() {
+                    // held back while the native app catches up
+                    expect(exec.calls.count()).toBe(1);
+                }, 2);
+                setTimeout(function() {
+                    expect(exec.calls.count()).toBe(2);
+                    expect(JSON.parse(exec.calls.argsFor(1)[0]).length).toBe(2);
+                    done();
+                }, 50);
+            }, 10);
+        });
+    });
+
     it('should use unique IDs', function(done) {
         var settings = {};
         var plugins = ["foo"];
@@ -311,4 +361,486 @@ describe("Savannah", function() {
             done();
         }, 100);
     });
+
+    it("should deliver batched results in order", function(done) {
+        var settings = {};
+        var plugins = ["foo"];
+        var pluginMethods = [["bar"]];
+
+        androidSavannah._didFinishLoad(settings, plugins, pluginMethods);
+        androidSavannah.ready.then(function() {
+            var progress = [];
+            var first = androidSavannah.plugins.foo.bar().progress(function(result) {
+                progress.push(result);
+            });
+            var second = androidSavannah.plugins.foo.bar();
+
+            setTimeout(function() {
+                var messages = JSON.parse(androidEnvironment.savannahJSI.exec.calls.argsFor(0)[0]);
+                var firstId = messages[0][0];
+                var secondId = messages[1][0];
+
+                androidSavannah._callbacks([
+                    [firstId, false, 1, true],
+                    [secondId, false, "nope", false],
+                    [firstId, false, 2, true],
+                    [firstId, true, "done", false]
+                ]);
+
+                Promise.all([first, second.catch(function(error) {
+                    return error;
+                })]).then(function(results) {
+                    expect(progress).toEqual([1, 2]);
+                    expect(results).toEqual(["done", "nope"]);
+                    done();
+                });
+            }, 100);
+        });
+    });
+
+    it("should route results by numeric callback ID", function(done) {
+        var settings = {};
+        var plugins = ["foo"];
+        var pluginMethods = [["bar"]];
+
+        androidSavannah._didFinishLoad(settings, plugins, pluginMethods);
+        androidSavannah.ready.then(function() {
+            var success = jasmine.createSpy("success");
+            androidSavannah.exec(success, null, "foo", "bar", []);
+
+            setTimeout(function() {
+                var messages = JSON.parse(androidEnvironment.savannahJSI.exec.calls.argsFor(0)[0]);
+                androidSavannah._callback(messages[0][0], true, "baz", false);
+                expect(success).toHaveBeenCalledWith("baz");
+
+                // the callback is discarded once a final result arrives
+                androidSavannah._callback(messages[0][0], true, "qux", false);
+                expect(success.calls.count()).toBe(1);
+                done();
+            }, 100);
+        });
+    });
+
+    it("should send binary arguments alongside the command batch", function(done) {
+        var settings = {};
+        var plugins = ["foo"];
+        var pluginMethods = [["bar"]];
+
+        androidSavannah._didFinishLoad(settings, plugins, pluginMethods);
+        androidSavannah.ready.then(function() {
+            var buffer = new Uint8Array([0, 34, 92, 255, 1, 2, 3]);
+            androidSavannah.plugins.foo.bar(buffer.subarray(0, 4), "baz", buffer.buffer);
+
+            setTimeout(function() {
+                expect(androidEnvironment.savannahJSI.exec).not.toHaveBeenCalled();
+                expect(androidEnvironment.savannahJSI.execWithBinary.calls.count()).toBe(1);
+
+                var args = androidEnvironment.savannahJSI.execWithBinary.calls.argsFor(0);
+                var messages = JSON.parse(args[0]);
+                var binary = args[1];
+
+                expect(messages[0][3]).toEqual([{$svnhBinary: [0, 4]}, "baz", {$svnhBinary: [4, 7]}]);
+                expect(binary.length).toBe(11);
+                expect(binary.charCodeAt(3)).toBe(255);
+                expect(binary.charCodeAt(10)).toBe(3);
+                done();
+            }, 100);
+        });
+    });
+
+    it("should turn binary results into byte arrays", function(done) {
+        var settings = {};
+        var plugins = ["foo"];
+        var pluginMethods = [["bar"]];
+
+        androidSavannah._didFinishLoad(settings, plugins, pluginMethods);
+        androidSavannah.ready.then(function() {
+            var result = androidSavannah.plugins.foo.bar();
+
+            setTimeout(function() {
+                var messages = JSON.parse(androidEnvironment.savannahJSI.exec.calls.argsFor(0)[0]);
+                androidSavannah._callback(messages[0][0], true, JSON.parse("{\"$svnhBinary\":\"\\u0000\\\"\\\\\\u00ff\"}"), false);
+
+                result.then(function(bytes) {
+                    expect(bytes instanceof Uint8Array).toBe(true);
+                    expect(Array.prototype.slice.call(bytes)).toEqual([0, 34, 92, 255]);
+                    done();
+                });
+            }, 100);
+        });
+    });
+
+    it("should answer calls to cacheable methods from the page's cache", function(done) {
+        androidSavannah._didFinishLoad({}, "foo:bar@60000,baz");
+        androidSavannah.ready.then(function() {
+            var first = androidSavannah.plugins.foo.bar({a: 1, b: 2});
+
+            setTimeout(function() {
+                var messages = JSON.parse(androidEnvironment.savannahJSI.exec.calls.argsFor(0)[0]);
+                androidSavannah._callback(messages[0][0], true, {qux: [1]}, false);
+
+                first.then(function() {
+                    // the same arguments, built in a different order, hit the cache
+                    return androidSavannah.plugins.foo.bar({b: 2, a: 1});
+                }).then(function(result) {
+                    var cancelled;
+
+                    expect(result).toEqual({qux: [1]});
+                    expect(androidEnvironment.savannahJSI.exec.calls.count()).toBe(1);
+
+                    // a call answered from the cache is cancelled without telling the native app
+                    cancelled = androidSavannah.plugins.foo.bar({a: 1, b: 2});
+                    cancelled.then(null, function() {});
+                    cancelled.cancel();
+
+                    androidSavannah._invalidate("foo", "bar");
+                    androidSavannah.plugins.foo.bar({a: 1, b: 2});
+                    androidSavannah.plugins.foo.baz();
+
+                    setTimeout(function() {
+                        var messages = JSON.parse(androidEnvironment.savannahJSI.exec.calls.argsFor(1)[0]);
+                        expect(messages.length).toBe(2);
+                        expect(messages[0][2]).toBe("bar");
+                        expect(messages[1][2]).toBe("baz");
+                        done();
+                    }, 100);
+                });
+            }, 100);
+        });
+    });
+
+    it("should send commands in order of priority", function(done) {
+        androidSavannah._didFinishLoad({}, "foo:bar,baz!2,qux!0");
+        androidSavannah.ready.then(function() {
+            androidSavannah.plugins.foo.qux();
+            androidSavannah.plugins.foo.bar(1);
+            androidSavannah.withPriority("high", function() {
+                androidSavannah.plugins.foo.bar(2);
+            });
+            androidSavannah.plugins.foo.baz();
+            androidSavannah.withPriority("low", function() {
+                androidSavannah.plugins.foo.baz();
+            });
+
+            expect(function() {
+                androidSavannah.withPriority("urgent", function() {});
+            }).toThrow();
+
+            setTimeout(function() {
+                var messages = JSON.parse(androidEnvironment.savannahJSI.exec.calls.argsFor(0)[0]);
+                expect(messages.map(function(message) {
+                    return message.slice(2);
+                })).toEqual([
+                    ["bar", [2], 2],
+                    ["baz", []],
+                    ["bar", [1]],
+                    ["qux", []],
+                    ["baz", [], 0]
+                ]);
+                done();
+            }, 100);
+        });
+    });
+
+    it("should cancel calls", function(done) {
+        androidSavannah._didFinishLoad({}, "foo:bar");
+        androidSavannah.ready.then(function() {
+            var unsent = androidSavannah.plugins.foo.bar(1);
+            var success = jasmine.createSpy("success");
+            var handle = androidSavannah.exec(success, null, "foo", "bar", [2]);
+            var sent;
+            var unsentReason;
+
+            // a call which hasn't been sent yet never reaches the native app
+            unsent.then(null, function(reason) {
+                unsentReason = reason;
+            });
+            unsent.cancel();
+
+            setTimeout(function() {
+                var messages = JSON.parse(androidEnvironment.savannahJSI.exec.calls.argsFor(0)[0]);
+                expect(messages.length).toBe(1);
+                expect(messages[0][3]).toEqual([2]);
+
+                // a call which has been sent is cancelled natively, and its result is ignored
+                handle.cancel();
+                androidSavannah._callback(messages[0][0], true, "baz", false);
+                expect(success).not.toHaveBeenCalled();
+
+                sent = androidSavannah.plugins.foo.bar(3);
+                sent.then(null, function() {});
+
+                setTimeout(function() {
+                    var messages = JSON.parse(androidEnvironment.savannahJSI.exec.calls.argsFor(1)[0]);
+                    expect(messages[0].slice(1)).toEqual(["savannah.commands", "cancel", [2], 2]);
+
+                    sent.cancel();
+                    sent.cancel();
+                    expect(unsentReason).toBe("Cancelled");
+                    done();
+                }, 100);
+            }, 100);
+        });
+    });
+
+    it("should drop the binary arguments of cancelled calls", function(done) {
+        androidSavannah._didFinishLoad({}, "foo:bar");
+        androidSavannah.ready.then(function() {
+            var first = androidSavannah.plugins.foo.bar(new Uint8Array([1, 2]));
+            var cancelled = androidSavannah.plugins.foo.bar(new Uint8Array([3, 4, 5]), "baz");
+            var last = androidSavannah.plugins.foo.bar(new Uint8Array([6]));
+
+            first.then(null, function() {});
+            last.then(null, function() {});
+            cancelled.then(null, function() {});
+            cancelled.cancel();
+
+            setTimeout(function() {
+                var args = androidEnvironment.savannahJSI.execWithBinary.calls.argsFor(0);
+                var messages = JSON.parse(args[0]);
+
+                // the later call's argument moves up to fill the gap
+                expect(messages.length).toBe(2);
+                expect(messages[0][3]).toEqual([{$svnhBinary: [0, 2]}]);
+                expect(messages[1][3]).toEqual([{$svnhBinary: [2, 1]}]);
+                expect(args[1].length).toBe(3);
+                expect(args[1].charCodeAt(2)).toBe(6);
+                done();
+            }, 100);
+        });
+    });
+
+    it("should time out calls", function(done) {
+        androidSavannah._didFinishLoad({}, "foo:bar");
+        androidSavannah.ready.then(function() {
+            var timedOut = androidSavannah.withTimeout(50, function() {
+                return androidSavannah.plugins.foo.bar(1);
+            });
+            var prioritized = androidSavannah.withPriority("low", function() {
+                return androidSavannah.withTimeout(1000, function() {
+                    return androidSavannah.plugins.foo.bar(2);
+                });
+            });
+            var untimed = androidSavannah.plugins.foo.bar(3);
+            var timedOutReason;
+
+            timedOut.then(null, function(reason) {
+                timedOutReason = reason;
+            });
+            prioritized.then(null, function() {});
+            untimed.then(null, function() {});
+
+            expect(function() {
+                androidSavannah.withTimeout(-1, function() {});
+            }).toThrow();
+
+            setTimeout(function() {
+                var messages = JSON.parse(androidEnvironment.savannahJSI.exec.calls.argsFor(0)[0]);
+
+                // the timeout follows the priority, which is null if the page set none
+                expect(messages[0].slice(3)).toEqual([[1], null, 50]);
+                expect(messages[1].slice(3)).toEqual([[3]]);
+                expect(messages[2].slice(3)).toEqual([[2], 0, 1000]);
+
+                setTimeout(function() {
+                    var success = jasmine.createSpy("success");
+
+                    // a call which times out is rejected, and its late result is ignored
+                    expect(timedOutReason).toBe("Timeout");
+                    androidSavannah._callback(messages[0][0], true, "baz", false);
+                    expect(timedOutReason).toBe("Timeout");
+
+                    prioritized.then(success);
+                    androidSavannah._callback(messages[2][0], true, "baz", false);
+                    setTimeout(function() {
+                        expect(success).toHaveBeenCalledWith("baz");
+                        done();
+                    }, 0);
+                }, 100);
+            }, 10);
+        });
+    });
+
+    it("should not subscribe to event streams on iOS", function(done) {
+        iOSSavannah._didFinishLoad({}, ["foo"], [["bar"]]);
+        iOSSavannah.ready.then(function() {
+            var subscription = iOSSavannah.subscribe("accel", function() {}, {interval: 50});
+
+            subscription.unsubscribe();
+            expect(iOSSavannah._fetchMessages()).toBe("[]");
+            done();
+        });
+    });
+
+    it("should not send cancellations to iOS", function(done) {
+        iOSSavannah._didFinishLoad({}, ["foo"], [["bar"]]);
+        iOSSavannah.ready.then(function() {
+            var call = iOSSavannah.plugins.foo.bar(1);
+            var messages = JSON.parse(iOSSavannah._fetchMessages());
+            var reason;
+
+            call.then(null, function(error) {
+                reason = error;
+            });
+            expect(messages.length).toBe(1);
+
+            // iOS has no plugin to cancel commands, so the call's result is just ignored
+            call.cancel();
+            expect(iOSSavannah._fetchMessages()).toBe("[]");
+            iOSSavannah._callback(messages[0][0], true, "baz", false);
+
+            setTimeout(function() {
+                expect(reason).toBe("Cancelled");
+                done();
+            }, 0);
+        });
+    });
+
+    it("should subscribe to event streams from the native app", function(done) {
+        androidSavannah._didFinishLoad({}, [], []);
+        androidSavannah.ready.then(function() {
+            var listener = jasmine.createSpy("listener");
+            var subscription = androidSavannah.subscribe("accel", listener, {interval: 50, conflate: true});
+
+            androidSavannah._events([["accel", [1, 2]], ["other", [3]]]);
+            expect(listener.calls.count()).toBe(2);
+            expect(listener.calls.argsFor(1)).toEqual([2]);
+
+            subscription.unsubscribe();
+            androidSavannah._events([["accel", [4]]]);
+            expect(listener.calls.count()).toBe(2);
+
+            setTimeout(function() {
+                var messages = _.flatten(_.map(androidEnvironment.savannahJSI.exec.calls.allArgs(), function(args) {
+                    return JSON.parse(args[0]);
+                }), true);
+
+                expect(messages.length).toBe(2);
+                expect(messages[0].slice(1)).toEqual(["savannah.events", "subscribe", ["accel", {interval: 50, conflate: true}]]);
+                expect(messages[1].slice(1)).toEqual(["savannah.events", "unsubscribe", ["accel"]]);
+                done();
+            }, 100);
+        });
+    });
+
+    it("should send commands made before Savannah is ready once it is", function(done) {
+        var result = androidSavannah.exec("foo", "bar", ["baz"]);
+
+        setTimeout(function() {
+            expect(androidEnvironment.savannahJSI.exec).not.toHaveBeenCalled();
+            androidSavannah._didFinishLoad({}, ["foo"], [["bar"]]);
+
+            setTimeout(function() {
+                var messages = JSON.parse(androidEnvironment.savannahJSI.exec.calls.argsFor(0)[0]);
+                expect(messages.length).toBe(1);
+                expect(messages[0].slice(1)).toEqual(["foo", "bar", ["baz"]]);
+
+                androidSavannah._callback(messages[0][0], true, "qux", false);
+                result.then(function(value) {
+                    expect(value).toBe("qux");
+                    done();
+                });
+            }, 100);
+        }, 100);
+    });
+
+    it("should fetch settings and plugins from the native app as soon as it runs", function(done) {
+        var environment = {
+            Promise: window.Promise,
+            location: {
+                href: "file:///android_asset/www/index.html"
+            },
+            savannahJSI: {
+                exec: jasmine.createSpy("exec"),
+                bootstrap: jasmine.createSpy("bootstrap").and.returnValue(JSON.stringify([{baz: 1}, ["foo"], [["bar"]]]))
+            }
+        };
+        var savannah = new window.savannah.constructor(environment);
+
+        expect(environment.savannahJSI.bootstrap).toHaveBeenCalledWith("file:///android_asset/www/index.html");
+        expect(savannah._getIsLoadFinished()).toBe(true);
+        expect(savannah.settings).toEqual({baz: 1});
+        expect(typeof savannah.plugins.foo.bar).toBe("function");
+
+        // the native app calls _didFinishLoad again once the page has loaded
+        savannah._didFinishLoad({}, [], []);
+        expect(savannah.settings).toEqual({baz: 1});
+        savannah.ready.then(done);
+    });
+
+    it("should reassemble streamed results", function(done) {
+        var settings = {};
+        var plugins = ["foo"];
+        var pluginMethods = [["bar"]];
+
+        androidSavannah._didFinishLoad(settings, plugins, pluginMethods);
+        androidSavannah.ready.then(function() {
+            var progress = jasmine.createSpy("progress");
+            var streamed = androidSavannah.plugins.foo.bar().progress(progress);
+            var failed = androidSavannah.plugins.foo.bar();
+            var binary = androidSavannah.plugins.foo.bar();
+
+            setTimeout(function() {
+                var messages = JSON.parse(androidEnvironment.savannahJSI.exec.calls.argsFor(0)[0]);
+                var streamedId = messages[0][0];
+                var failedId = messages[1][0];
+                var binaryId = messages[2][0];
+
+                androidSavannah._callbacks([
+                    [streamedId, true, "{\"foo\":[1,", true, true],
+                    [failedId, true, "{\"foo\"", true, true],
+                    [binaryId, true, "{\"$svnhBinary\":", true, true],
+                    [streamedId, true, "2]}", false, true],
+                    [failedId, false, "oops", false],
+                    [binaryId, true, "\"\\u0000\\u00ff\"}", false, true]
+                ]);
+
+                Promise.all([streamed, failed.catch(function(error) {
+                    return error;
+                }), binary]).then(function(results) {
+                    expect(progress).not.toHaveBeenCalled();
+                    expect(results.slice(0, 2)).toEqual([{foo: [1, 2]}, "oops"]);
+                    expect(Array.prototype.slice.call(results[2])).toEqual([0, 255]);
+                    done();
+                });
+            }, 100);
+        });
+    });
+
+    it("should receive results on a message port from the native app", function(done) {
+        var listeners = [];
+        var environment = {
+            Promise: window.Promise,
+            savannahJSI: {
+                exec: jasmine.createSpy("exec")
+            },
+            addEventListener: function(type, listener) {
+                listeners.push(listener);
+            }
+        };
+        var savannah = new window.savannah.constructor(environment);
+        var port = {
+            postMessage: jasmine.createSpy("postMessage")
+        };
+
+        // messages from other windows are ignored
+        listeners[0]({data: "savannah:port", source: {}, ports: [{}]});
+        listeners[0]({data: "savannah:port", source: null, ports: [port]});
+        expect(port.postMessage).toHaveBeenCalledWith("savannah:ready");
+
+        savannah._didFinishLoad({}, ["foo"], [["bar"]]);
+        savannah.ready.then(function() {
+            var result = savannah.plugins.foo.bar();
+
+            setTimeout(function() {
+                var messages = JSON.parse(environment.savannahJSI.exec.calls.argsFor(0)[0]);
+                port.onmessage({data: JSON.stringify([[messages[0][0], true, "baz", false]])});
+
+                result.then(function(value) {
+                    expect(value).toBe("baz");
+                    done();
+                });
+            }, 100);
+        });
+    });
 });